@@ -26,8 +26,9 @@ public class VivekanandManagerApplication {
         CorsConfiguration config = new CorsConfiguration();
         String origins = env.getProperty("cors.allowedOrigins", "http://localhost:3000,http://localhost:5173");
         config.setAllowedOrigins(Arrays.asList(origins.split(",")));
-        config.setAllowedHeaders(Arrays.asList("Origin", "Content-Type", "Accept", "Authorization"));
-        config.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
+        config.setAllowedHeaders(Arrays.asList("Origin", "Content-Type", "Accept", "Authorization", "Upload-Offset"));
+        config.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "HEAD", "OPTIONS"));
+        config.setExposedHeaders(Arrays.asList("Location", "Upload-Offset", "Upload-Length", "Upload-Expires"));
         config.setAllowCredentials(true);
         source.registerCorsConfiguration("/**", config);
         return new CorsFilter(source);
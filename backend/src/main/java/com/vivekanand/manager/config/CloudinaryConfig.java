@@ -3,7 +3,7 @@ package com.vivekanand.manager.config;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,8 +12,12 @@ import java.util.Map;
 @Configuration
 public class CloudinaryConfig {
 
+    /**
+     * Also created under the local provider when credentials are set, so rows still on Cloudinary
+     * (mid-migration) get their poster/variant URLs and their assets can be removed afterwards.
+     */
     @Bean
-    @ConditionalOnProperty(name = "storage.provider", havingValue = "cloudinary")
+    @ConditionalOnExpression("'${storage.provider:local}' == 'cloudinary' or '${cloudinary.cloudName:}' != ''")
     public Cloudinary cloudinary(
             @Value("${cloudinary.cloudName}") String cloudName,
             @Value("${cloudinary.apiKey}") String apiKey,
@@ -5,6 +5,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class HttpClientConfig {
     @Bean
@@ -14,4 +17,13 @@ public class HttpClientConfig {
         f.setReadTimeout(15_000);    // 15s
         return new RestTemplate(f);
     }
+
+    /** Pooled, keep-alive client for proxying remote media (see RemoteMediaProxy) */
+    @Bean
+    public HttpClient mediaHttpClient() {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
 }
@@ -0,0 +1,72 @@
+package com.vivekanand.manager.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Clients for an S3-compatible object store. {@code s3.endpoint} points them at anything other than
+ * AWS (MinIO, R2, a local stand-in for development), which usually also needs {@code s3.pathStyle}.
+ * Without explicit keys the default AWS credential chain is used.
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.provider", havingValue = "s3")
+public class S3Config {
+
+    @Value("${s3.region:us-east-1}")
+    private String region;
+    @Value("${s3.endpoint:}")
+    private String endpoint;
+    @Value("${s3.pathStyle:false}")
+    private boolean pathStyle;
+    @Value("${s3.accessKey:}")
+    private String accessKey;
+    @Value("${s3.secretKey:}")
+    private String secretKey;
+
+    @Bean(destroyMethod = "close")
+    public S3Client s3Client(@Value("${s3.maxConnections:64}") int maxConnections) {
+        var builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials())
+                .serviceConfiguration(s3Configuration())
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionTimeout(Duration.ofSeconds(10)));
+        if (!endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public S3Presigner s3Presigner() {
+        var builder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials())
+                .serviceConfiguration(s3Configuration());
+        if (!endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+        return builder.build();
+    }
+
+    private S3Configuration s3Configuration() {
+        return S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build();
+    }
+
+    private AwsCredentialsProvider credentials() {
+        return accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+    }
+}
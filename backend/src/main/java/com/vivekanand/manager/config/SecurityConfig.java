@@ -3,8 +3,10 @@ package com.vivekanand.manager.config;
 
 import com.vivekanand.manager.auth.JwtUtil;
 import com.vivekanand.manager.auth.UserRepository;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
@@ -41,6 +43,25 @@ public class SecurityConfig {
         return new ProviderManager(provider);
     }
 
+    /**
+     * Signed download links ({@code /api/files/**}) carry their own HMAC authorization, checked by
+     * SignedDownloadController: no JWT parsing, user lookup or security context on this path.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain signedFilesFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/api/files/**")
+                .csrf(csrf -> csrf.disable())
+                .cors(Customizer.withDefaults())
+                .sessionManagement(sm -> sm.sessionCreationPolicy(org.springframework.security.config.http.SessionCreationPolicy.STATELESS))
+                .securityContext(sc -> sc.disable())
+                .requestCache(rc -> rc.disable())
+                .anonymous(a -> a.disable())
+                .authorizeHttpRequests(auth -> auth.anyRequest().permitAll());
+        return http.build();
+    }
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http, JwtUtil jwtUtil, UserRepository repo) throws Exception {
         http
@@ -48,13 +69,17 @@ public class SecurityConfig {
                 .cors(Customizer.withDefaults())
                 .sessionManagement(sm -> sm.sessionCreationPolicy(org.springframework.security.config.http.SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // streamed responses finish on an async dispatch; the request was authorized already
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers(
                                 "/swagger-ui.html",
                                 "/swagger-ui/**",
                                 "/v3/api-docs/**"
                         ).permitAll()
                         .requestMatchers("/actuator/health", "/actuator/info").permitAll()
+                        .requestMatchers("/actuator/metrics", "/actuator/metrics/**").hasRole("ADMIN")
                         .requestMatchers("/api/gallery/albums", "/api/gallery/albums/*/items").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/gallery/search", "/api/gallery/tags", "/api/gallery/tags/suggest").permitAll()
                         .requestMatchers("/api/public/uploads/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/public/uploads/**").permitAll()
                         .requestMatchers("/api/public/pages/**").permitAll()
@@ -2,11 +2,21 @@
 package com.vivekanand.manager.finance;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FinancialRecordRepository extends JpaRepository<FinancialRecord, Long> {
     List<FinancialRecord> findByEventId(Long eventId);
 
     void deleteByUploadId(Long uploadId);
+
+    @Modifying
+    @Query("delete from FinancialRecord f where f.uploadId in :uploadIds")
+    int deleteByUploadIdIn(Collection<Long> uploadIds);
+
+    @Query("select distinct f.uploadId from FinancialRecord f where f.uploadId in :uploadIds")
+    List<Long> findReferencedUploadIds(Collection<Long> uploadIds);
 }
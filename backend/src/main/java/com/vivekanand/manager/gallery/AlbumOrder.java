@@ -0,0 +1,111 @@
+package com.vivekanand.manager.gallery;
+
+import java.util.*;
+
+/**
+ * In-memory ordering of one album's live items, used to turn moves into the few position changes
+ * they need. Positions are gapped ranks ({@link GalleryItem#RANK_GAP} apart when fresh), so a moved
+ * item normally takes the midpoint between its new neighbours and no other row changes. Only when
+ * two neighbours leave no room (or legacy rows share a position) is the whole album renumbered,
+ * and even then only rows whose position actually differs are reported.
+ */
+final class AlbumOrder {
+
+    private static final long LIMIT = 1L << 30; // keep ranks well inside int range
+
+    private static final class Entry {
+        final long id;
+        final int original;
+        long position;
+
+        Entry(long id, int position) {
+            this.id = id;
+            this.original = position;
+            this.position = position;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Long, Entry> byId = new HashMap<>();
+
+    /** @param rows the album's live items in display order */
+    AlbumOrder(List<GalleryItemRepository.ItemRankRow> rows) {
+        for (var row : rows) {
+            Entry e = new Entry(row.getId(), row.getPosition() != null ? row.getPosition() : 0);
+            entries.add(e);
+            byId.put(e.id, e);
+        }
+    }
+
+    /** Moves {@code itemId} right after {@code afterId}, else right before {@code beforeId}, else to the front */
+    void move(long itemId, Long afterId, Long beforeId) {
+        if (Objects.equals(afterId, itemId) || Objects.equals(beforeId, itemId)) {
+            throw new IllegalArgumentException("Cannot move an item relative to itself");
+        }
+        Entry moving = entry(itemId);
+        entries.remove(moving);
+        int index = afterId != null ? entries.indexOf(entry(afterId)) + 1
+                : beforeId != null ? entries.indexOf(entry(beforeId))
+                : 0;
+        entries.add(index, moving);
+        place(index);
+    }
+
+    /**
+     * Reorders the given items among the slots they already occupy, leaving every other item where
+     * it is (e.g. one page of a paged grid).
+     */
+    void reorder(List<Long> orderedIds) {
+        List<Entry> moved = new ArrayList<>(orderedIds.size());
+        Set<Long> seen = new HashSet<>();
+        for (Long id : orderedIds) {
+            if (!seen.add(id)) throw new IllegalArgumentException("Duplicate item " + id);
+            moved.add(entry(id));
+        }
+        int[] slots = moved.stream().mapToInt(entries::indexOf).sorted().toArray();
+        long[] ranks = Arrays.stream(slots).mapToLong(i -> entries.get(i).position).toArray();
+        for (int i = 0; i < slots.length; i++) {
+            entries.set(slots[i], moved.get(i));
+            moved.get(i).position = ranks[i];
+        }
+        if (!strictlyIncreasing()) rebalance();
+    }
+
+    /** Item id -> new position, for the rows whose position changed */
+    Map<Long, Integer> changes() {
+        Map<Long, Integer> out = new LinkedHashMap<>();
+        for (Entry e : entries) {
+            if (e.position != e.original) out.put(e.id, (int) e.position);
+        }
+        return out;
+    }
+
+    private void place(int index) {
+        Entry prev = index > 0 ? entries.get(index - 1) : null;
+        Entry next = index + 1 < entries.size() ? entries.get(index + 1) : null;
+        long lo = prev != null ? prev.position : (next != null ? next.position - 2L * GalleryItem.RANK_GAP : 0);
+        long hi = next != null ? next.position : lo + 2L * GalleryItem.RANK_GAP;
+        if (hi - lo < 2 || lo < -LIMIT || hi > LIMIT) {
+            rebalance();
+        } else {
+            entries.get(index).position = lo + (hi - lo) / 2;
+        }
+    }
+
+    private boolean strictlyIncreasing() {
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i).position <= entries.get(i - 1).position) return false;
+        }
+        return true;
+    }
+
+    private void rebalance() {
+        for (int i = 0; i < entries.size(); i++) entries.get(i).position = (long) (i + 1) * GalleryItem.RANK_GAP;
+    }
+
+    private Entry entry(long id) {
+        Entry e = byId.get(id);
+        if (e == null) throw new NoSuchElementException("Item " + id + " is not in this album");
+        return e;
+    }
+}
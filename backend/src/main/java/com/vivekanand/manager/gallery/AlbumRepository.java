@@ -2,7 +2,79 @@
 package com.vivekanand.manager.gallery;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 
 public interface AlbumRepository extends JpaRepository<Album, Long> {
+    interface AlbumSummaryRow {
+        Long getId();
+
+        String getName();
+
+        String getDescription();
+
+        boolean isVisible();
+
+        Instant getCreatedAt();
+
+        Instant getUpdatedAt();
+
+        Long getCoverUploadId();
+
+        long getItemCount();
+
+        long getVisibleCount();
+
+        long getTotalBytes();
+
+        Instant getLastItemAt();
+
+        String getCoverContentType();
+
+        String getCoverContentHash();
+
+        Long getCoverSizeBytes();
+
+        Instant getCoverUploadedAt();
+
+        Integer getCoverWidth();
+
+        Integer getCoverHeight();
+
+        String getCoverBlurhash();
+    }
+
     void deleteByCoverUploadId(Long coverUploadId);
+
+    @Modifying
+    @Query("delete from Album a where a.coverUploadId in :uploadIds")
+    int deleteByCoverUploadIdIn(Collection<Long> uploadIds);
+
+    @Query("select distinct a.coverUploadId from Album a where a.coverUploadId in :uploadIds")
+    List<Long> findReferencedUploadIds(Collection<Long> uploadIds);
+
+    /** Every album with its live-item aggregates and cover upload, in one grouped query */
+    @Query("""
+            select a.id as id, a.name as name, a.description as description, a.visible as visible,
+                   a.createdAt as createdAt, a.updatedAt as updatedAt, a.coverUploadId as coverUploadId,
+                   count(g.id) as itemCount,
+                   coalesce(sum(case when g.visible = true then 1 else 0 end), 0) as visibleCount,
+                   coalesce(sum(u.sizeBytes), 0) as totalBytes,
+                   max(g.updatedAt) as lastItemAt,
+                   c.contentType as coverContentType, c.contentHash as coverContentHash,
+                   c.sizeBytes as coverSizeBytes, c.uploadedAt as coverUploadedAt,
+                   c.width as coverWidth, c.height as coverHeight, c.blurhash as coverBlurhash
+            from Album a
+                left join GalleryItem g on g.albumId = a.id and g.deletedAt is null
+                left join Upload u on u.id = g.uploadId
+                left join Upload c on c.id = a.coverUploadId
+            group by a.id, a.name, a.description, a.visible, a.createdAt, a.updatedAt, a.coverUploadId,
+                     c.id, c.contentType, c.contentHash, c.sizeBytes, c.uploadedAt, c.width, c.height, c.blurhash
+            order by a.id
+            """)
+    List<AlbumSummaryRow> findSummaries();
 }
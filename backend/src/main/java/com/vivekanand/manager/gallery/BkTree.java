@@ -0,0 +1,109 @@
+package com.vivekanand.manager.gallery;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BK-tree over 64-bit hashes with Hamming distance, mapping each hash to the ids that carry it.
+ * A range query only descends into children whose edge distance is within {@code maxDistance} of
+ * the query's distance to the parent (triangle inequality), so small radii visit a small fraction
+ * of the nodes instead of every stored hash.
+ * <p>
+ * Append-only: ids of deleted uploads stay until the tree is next loaded from the database, so
+ * callers filter results against what is still live.
+ */
+final class BkTree {
+
+    interface Visitor {
+        void visit(long id, int distance);
+    }
+
+    private static final class Node {
+        final long hash;
+        long[] ids;
+        Map<Integer, Node> children; // by distance to this node, created on first child
+
+        Node(long hash, long id) {
+            this.hash = hash;
+            this.ids = new long[]{id};
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+    private int size;
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    void add(long hash, long id) {
+        lock.writeLock().lock();
+        try {
+            if (root == null) {
+                root = new Node(hash, id);
+                size++;
+                return;
+            }
+            Node node = root;
+            while (true) {
+                int d = distance(node.hash, hash);
+                if (d == 0) {
+                    for (long existing : node.ids) if (existing == id) return;
+                    node.ids = Arrays.copyOf(node.ids, node.ids.length + 1);
+                    node.ids[node.ids.length - 1] = id;
+                    size++;
+                    return;
+                }
+                if (node.children == null) node.children = new HashMap<>(4);
+                Node child = node.children.get(d);
+                if (child == null) {
+                    node.children.put(d, new Node(hash, id));
+                    size++;
+                    return;
+                }
+                node = child;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Calls {@code visitor} for every id whose hash is within {@code maxDistance} of {@code hash} */
+    void search(long hash, int maxDistance, Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            if (root == null) return;
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                int d = distance(node.hash, hash);
+                if (d <= maxDistance) {
+                    for (long id : node.ids) visitor.visit(id, d);
+                }
+                if (node.children == null) continue;
+                for (int edge = Math.max(1, d - maxDistance); edge <= d + maxDistance; edge++) {
+                    Node child = node.children.get(edge);
+                    if (child != null) pending.push(child);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.vivekanand.manager.gallery;
 
 import com.vivekanand.manager.gallery.dto.AlbumDto;
+import com.vivekanand.manager.gallery.dto.DuplicateClusterDto;
 import com.vivekanand.manager.gallery.dto.GalleryItemDto;
+import com.vivekanand.manager.gallery.dto.ItemMoveDto;
+import com.vivekanand.manager.gallery.dto.ItemPositionDto;
+import com.vivekanand.manager.gallery.dto.SimilarImageDto;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
@@ -11,9 +15,11 @@ import org.springframework.web.bind.annotation.*;
 public class GalleryAdminController {
 
     private final GalleryService svc;
+    private final SimilarImageService similar;
 
-    public GalleryAdminController(GalleryService s) {
+    public GalleryAdminController(GalleryService s, SimilarImageService similar) {
         this.svc = s;
+        this.similar = similar;
     }
 
     // Albums CRUD
@@ -48,9 +54,31 @@ public class GalleryAdminController {
         svc.softDeleteItem(id);
     }
 
-    // Drag-and-drop reordering: send array of item IDs in new order
+    // Drag-and-drop reordering: send array of item IDs in new order (they keep the slots they occupied)
     @PostMapping("/albums/{albumId}/reorder")
     public java.util.List<GalleryItem> reorder(@PathVariable Long albumId, @RequestBody java.util.List<Long> orderedItemIds) {
         return svc.bulkReorder(albumId, orderedItemIds);
     }
-}
\ No newline at end of file
+
+    // Move operations ("item X after item Y"); returns only the items whose position changed
+    @PostMapping("/albums/{albumId}/moves")
+    public java.util.List<ItemPositionDto> move(@PathVariable Long albumId, @RequestBody java.util.List<ItemMoveDto> moves) {
+        return svc.move(albumId, moves);
+    }
+
+    // Near-duplicate images by perceptual hash, library-wide or within one album (?albumId=)
+    @GetMapping("/similar/{uploadId}")
+    public java.util.List<SimilarImageDto> similar(@PathVariable Long uploadId,
+                                                   @RequestParam(required = false) Long albumId,
+                                                   @RequestParam(required = false) Integer maxDistance) {
+        return similar.similar(uploadId, albumId, maxDistance);
+    }
+
+    // Cleanup candidates: groups of near-identical images, largest first
+    @GetMapping("/duplicates")
+    public java.util.List<DuplicateClusterDto> duplicates(@RequestParam(required = false) Long albumId,
+                                                          @RequestParam(required = false) Integer maxDistance,
+                                                          @RequestParam(defaultValue = "100") int limit) {
+        return similar.clusters(albumId, maxDistance, limit);
+    }
+}
@@ -2,28 +2,79 @@ package com.vivekanand.manager.gallery;
 
 import com.vivekanand.manager.gallery.dto.AlbumItemDto;
 import com.vivekanand.manager.gallery.dto.GalleryItemDto;
+import com.vivekanand.manager.gallery.dto.TagCountDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.data.domain.Page;
 
+import java.time.Duration;
+
 @RestController
 @RequestMapping("/api/gallery")
 public class GalleryController {
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final GalleryService svc;
-    private final AlbumRepository albums;
+    private final GalleryResponseCache responses;
+    private final CacheControl publicCache;
 
-    public GalleryController(GalleryService s, AlbumRepository a) {
+    public GalleryController(GalleryService s, GalleryResponseCache responses,
+                             @Value("${gallery.cacheMaxAgeSeconds:30}") long maxAge,
+                             @Value("${gallery.cacheSharedMaxAgeSeconds:60}") long sharedMaxAge) {
         this.svc = s;
-        this.albums = a;
+        this.responses = responses;
+        this.publicCache = CacheControl.maxAge(Duration.ofSeconds(maxAge)).sMaxAge(Duration.ofSeconds(sharedMaxAge)).cachePublic();
     }
 
+    // Album fields plus item counts, bytes and cover metadata, so the landing page needs no per-album calls
     @GetMapping("/albums")
-    public java.util.List<Album> albums() {
-        return albums.findAll();
+    public ResponseEntity<byte[]> albums() {
+        return json(responses.albums(svc::albumSummaries), publicCache);
     }
 
+    // Hidden items (onlyVisible=false, the admin view) are cached here too but not by browsers or CDNs.
+    // size is clamped to 1..100; only existing albums' first page and non-empty pages are cached.
     @GetMapping("/albums/{albumId}/items")
-    public Page<AlbumItemDto> items(@PathVariable Long albumId, @RequestParam(defaultValue = "true") boolean onlyVisible,
-                                    @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "12") int size) {
-        return svc.listItems(albumId, onlyVisible, page, size);
+    public ResponseEntity<byte[]> items(@PathVariable Long albumId, @RequestParam(defaultValue = "true") boolean onlyVisible,
+                                        @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "12") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        var cached = responses.album(albumId, "items:" + onlyVisible + ":" + page + ":" + pageSize,
+                () -> svc.listItems(albumId, onlyVisible, page, pageSize),
+                p -> (page == 0 || p.hasContent()) && svc.albumExists(albumId));
+        return json(cached, onlyVisible ? publicCache : CacheControl.noCache().cachePrivate());
+    }
+
+    // Tag search over visible items: ?all=a,b (every tag) and/or ?any=c,d (at least one), newest first
+    @GetMapping("/search")
+    public Page<AlbumItemDto> search(@RequestParam(required = false) String all, @RequestParam(required = false) String any,
+                                     @RequestParam(required = false) Long albumId,
+                                     @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "24") int size) {
+        return svc.search(all, any, albumId, page, size);
+    }
+
+    // Tag facets, library-wide or for one album
+    @GetMapping("/tags")
+    public java.util.List<TagCountDto> tags(@RequestParam(required = false) Long albumId,
+                                            @RequestParam(defaultValue = "100") int limit) {
+        return svc.tagCounts(albumId, limit);
+    }
+
+    @GetMapping("/tags/suggest")
+    public java.util.List<TagCountDto> suggestTags(@RequestParam(defaultValue = "") String prefix,
+                                                   @RequestParam(defaultValue = "10") int limit) {
+        return svc.suggestTags(prefix, limit);
+    }
+
+    // A matching If-None-Match is answered with 304 (same headers, no body) by Spring's ResponseEntity handling
+    private static ResponseEntity<byte[]> json(GalleryResponseCache.CachedResponse r, CacheControl cacheControl) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(r.etag())
+                .cacheControl(cacheControl)
+                .header("Surrogate-Key", r.surrogateKeys())
+                .body(r.body());
     }
 }
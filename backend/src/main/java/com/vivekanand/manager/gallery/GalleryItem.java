@@ -9,6 +9,9 @@ import java.time.Instant;
 @Entity
 @Table(name = "gallery_items")
 public class GalleryItem {
+    /** Spacing of freshly assigned positions; moves take the midpoint between neighbours (see AlbumOrder) */
+    public static final int RANK_GAP = 1024;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
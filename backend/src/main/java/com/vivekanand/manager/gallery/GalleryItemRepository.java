@@ -3,11 +3,56 @@ package com.vivekanand.manager.gallery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface GalleryItemRepository extends JpaRepository<GalleryItem, Long> {
+    interface ItemRankRow {
+        Long getId();
+
+        Integer getPosition();
+    }
+
     Page<GalleryItem> findByAlbumIdAndDeletedAtIsNull(Long albumId, Pageable pageable);
 
     Page<GalleryItem> findByAlbumIdAndVisibleTrueAndDeletedAtIsNull(Long albumId, Pageable pageable);
 
     void deleteByUploadId(Long uploadId);
+
+    @Modifying
+    @Query("delete from GalleryItem g where g.uploadId in :uploadIds")
+    int deleteByUploadIdIn(Collection<Long> uploadIds);
+
+    @Query("select g.uploadId from GalleryItem g where g.albumId = :albumId")
+    List<Long> findUploadIdsByAlbumId(Long albumId);
+
+    /** Soft-deleted items still count: they keep their upload until purged */
+    @Query("select distinct g.uploadId from GalleryItem g where g.uploadId in :uploadIds")
+    List<Long> findReferencedUploadIds(Collection<Long> uploadIds);
+
+    @Query("select distinct g.uploadId from GalleryItem g where g.deletedAt is null")
+    List<Long> findLiveUploadIds();
+
+    @Query("select distinct g.uploadId from GalleryItem g where g.albumId = :albumId and g.deletedAt is null")
+    List<Long> findLiveUploadIdsByAlbumId(Long albumId);
+
+    @Query("select distinct g.uploadId from GalleryItem g where g.uploadId in :uploadIds and g.deletedAt is null")
+    List<Long> findLiveUploadIdsIn(Collection<Long> uploadIds);
+
+    @Query("select coalesce(max(g.position), -1) from GalleryItem g where g.albumId = :albumId and g.deletedAt is null")
+    int maxPosition(Long albumId);
+
+    /** Live items in display order (same as listItems), ids and positions only */
+    @Query("select g.id as id, g.position as position from GalleryItem g where g.albumId = :albumId and g.deletedAt is null order by g.position asc, g.createdAt desc, g.id asc")
+    List<ItemRankRow> findRanks(Long albumId);
+
+    @Query("select g.id from GalleryItem g where g.uploadId in :uploadIds")
+    List<Long> findIdsByUploadIdIn(Collection<Long> uploadIds);
+
+    /** Items tagged before tags were normalized into gallery_item_tags */
+    @Query("select g from GalleryItem g where g.tags is not null and g.tags <> '' and not exists (select t.id from ItemTag t where t.itemId = g.id)")
+    List<GalleryItem> findWithTagsButNoTagRows();
 }
@@ -0,0 +1,133 @@
+package com.vivekanand.manager.gallery;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON of the public gallery reads (album list, album item pages), with an ETag over the
+ * bytes, so a hot read is a map lookup and a revalidation a 304 without touching the database.
+ * <p>
+ * Entries are tagged with surrogate keys ({@code albums}, {@code album-<id>}, all under
+ * {@code gallery}) that are also sent as the {@code Surrogate-Key} header, so a CDN can purge by
+ * the same keys. Whoever mutates an album or its items invalidates that album (which always takes
+ * the album list with it, as that aggregates every album); upload deletes invalidate everything.
+ * Upload metadata filled in later (dimensions, placeholder) is picked up when entries expire.
+ * <p>
+ * Invalidation happens now and again after commit, and a response built while an invalidation
+ * ran is served but not stored, so a reader racing a write can't re-cache the old state. Callers
+ * decide what is worth storing at all, so anonymous parameters can't fill the cache with responses
+ * nobody else asks for.
+ */
+@Component
+public class GalleryResponseCache {
+
+    public static final String ALL = "gallery";
+    public static final String ALBUMS = "albums";
+
+    public record CachedResponse(byte[] body, String etag, String surrogateKeys) {
+    }
+
+    private record Key(Long albumId, String variant) {
+    }
+
+    private final ObjectMapper mapper;
+    private final Cache<Key, CachedResponse> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public GalleryResponseCache(ObjectMapper mapper, MeterRegistry meters,
+                                @Value("${gallery.responseCacheKb:16384}") long maxKb,
+                                @Value("${gallery.responseTtlMinutes:10}") long ttlMinutes) {
+        this.mapper = mapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxKb * 1024)
+                .weigher((Key k, CachedResponse r) -> r.body().length + 64)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meters, cache, "galleryResponses");
+    }
+
+    /** The album list */
+    public CachedResponse albums(Supplier<?> loader) {
+        return get(new Key(null, ""), ALL + " " + ALBUMS, loader, v -> true);
+    }
+
+    /**
+     * One album's response; {@code variant} distinguishes parameters such as paging. Only stored
+     * when {@code cacheable} accepts the loaded value, otherwise just serialized and served.
+     */
+    public <T> CachedResponse album(Long albumId, String variant, Supplier<T> loader, Predicate<? super T> cacheable) {
+        return get(new Key(albumId, variant), ALL + " album-" + albumId, loader, cacheable);
+    }
+
+    /** An album's responses and the album list */
+    public void invalidateAlbum(Long albumId) {
+        if (albumId == null) return;
+        afterCommitToo(() -> {
+            generation.incrementAndGet();
+            cache.asMap().keySet().removeIf(k -> k.albumId() == null || k.albumId().equals(albumId));
+        });
+    }
+
+    public void invalidateAll() {
+        afterCommitToo(() -> {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        });
+    }
+
+    private <T> CachedResponse get(Key key, String surrogateKeys, Supplier<T> loader, Predicate<? super T> cacheable) {
+        CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null) return cached;
+        long seen = generation.get();
+        T value = loader.get();
+        CachedResponse built = serialize(value, surrogateKeys);
+        if (generation.get() == seen && cacheable.test(value)) {
+            cache.put(key, built);
+            // an invalidation between the check and the put must still win
+            if (generation.get() != seen) cache.invalidate(key);
+        }
+        return built;
+    }
+
+    private CachedResponse serialize(Object value, String surrogateKeys) {
+        try {
+            byte[] body = mapper.writeValueAsBytes(value);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            String etag = "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+            return new CachedResponse(body, etag, surrogateKeys);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize gallery response", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void afterCommitToo(Runnable invalidate) {
+        invalidate.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate.run();
+                }
+            });
+        }
+    }
+}
@@ -3,12 +3,16 @@ package com.vivekanand.manager.gallery;
 import com.vivekanand.manager.gallery.dto.*;
 import com.vivekanand.manager.uploads.Upload;
 import com.vivekanand.manager.uploads.UploadRepository;
+import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.*;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
 
 @Service
 public class GalleryService {
@@ -16,10 +20,19 @@ public class GalleryService {
     private UploadRepository uploadRepo;
     private final AlbumRepository albumRepo;
     private final GalleryItemRepository itemRepo;
+    private final JdbcTemplate jdbc;
+    private final TagIndex tags;
+    private final GalleryResponseCache responses;
 
-    public GalleryService(AlbumRepository a, GalleryItemRepository g) {
+    private static final String SET_POSITION = "update gallery_items set position = ?, updated_at = ? where id = ?";
+
+    public GalleryService(AlbumRepository a, GalleryItemRepository g, JdbcTemplate jdbc, TagIndex tags,
+                          GalleryResponseCache responses) {
         this.albumRepo = a;
         this.itemRepo = g;
+        this.jdbc = jdbc;
+        this.tags = tags;
+        this.responses = responses;
     }
 
     public Album createAlbum(AlbumDto dto) {
@@ -28,7 +41,9 @@ public class GalleryService {
         a.setDescription(dto.description());
         a.setCoverUploadId(dto.coverUploadId());
         if (dto.visible() != null) a.setVisible(dto.visible());
-        return albumRepo.save(a);
+        Album saved = albumRepo.save(a);
+        responses.invalidateAlbum(saved.getId());
+        return saved;
     }
 
     public Album updateAlbum(Long id, AlbumDto dto) {
@@ -38,11 +53,39 @@ public class GalleryService {
         a.setCoverUploadId(dto.coverUploadId());
         if (dto.visible() != null) a.setVisible(dto.visible());
         a.setUpdatedAt(Instant.now());
-        return albumRepo.save(a);
+        Album saved = albumRepo.save(a);
+        responses.invalidateAlbum(id);
+        return saved;
+    }
+
+    /** Albums with counts, bytes and resolved cover for the landing page, from one aggregate query */
+    public List<AlbumSummaryDto> albumSummaries() {
+        return albumRepo.findSummaries().stream().map(r -> {
+            AlbumSummaryDto.Cover cover = null;
+            if (r.getCoverContentType() != null) {
+                Upload c = new Upload();
+                c.setContentHash(r.getCoverContentHash());
+                c.setSizeBytes(r.getCoverSizeBytes());
+                c.setUploadedAt(r.getCoverUploadedAt());
+                boolean sized = r.getCoverWidth() != null && r.getCoverWidth() > 0;
+                cover = new AlbumSummaryDto.Cover(r.getCoverUploadId(), r.getCoverContentType(), c.getFingerprint(),
+                        sized ? r.getCoverWidth() : null, sized ? r.getCoverHeight() : null, r.getCoverBlurhash());
+            }
+            Instant last = r.getUpdatedAt();
+            if (r.getLastItemAt() != null && (last == null || r.getLastItemAt().isAfter(last))) last = r.getLastItemAt();
+            return new AlbumSummaryDto(r.getId(), r.getName(), r.getDescription(), r.getCoverUploadId(), r.isVisible(),
+                    r.getCreatedAt(), r.getUpdatedAt(), r.getItemCount(), r.getVisibleCount(), r.getTotalBytes(),
+                    last, cover);
+        }).toList();
+    }
+
+    public boolean albumExists(Long id) {
+        return albumRepo.existsById(id);
     }
 
     public void deleteAlbum(Long id) {
         albumRepo.deleteById(id);
+        responses.invalidateAlbum(id);
     }
 
     public GalleryItem addItem(GalleryItemDto dto) {
@@ -51,27 +94,63 @@ public class GalleryService {
         gi.setUploadId(dto.uploadId());
         gi.setTitle(dto.title());
         gi.setCaption(dto.caption());
-        gi.setTags(dto.tags());
-        gi.setPosition(dto.position() == null ? 0 : dto.position());
+        gi.setTags(TagIndex.canonical(dto.tags()));
+        gi.setPosition(dto.position() == null ? itemRepo.maxPosition(dto.albumId()) + GalleryItem.RANK_GAP : dto.position());
         gi.setVisible(dto.visible() == null ? true : dto.visible());
-        return itemRepo.save(gi);
+        GalleryItem saved = itemRepo.save(gi);
+        tags.save(saved);
+        responses.invalidateAlbum(saved.getAlbumId());
+        return saved;
     }
 
     public GalleryItem updateItem(Long id, GalleryItemDto dto) {
         GalleryItem gi = itemRepo.findById(id).orElseThrow();
         gi.setTitle(dto.title());
         gi.setCaption(dto.caption());
-        gi.setTags(dto.tags());
+        gi.setTags(TagIndex.canonical(dto.tags()));
         gi.setPosition(dto.position() == null ? gi.getPosition() : dto.position());
         if (dto.visible() != null) gi.setVisible(dto.visible());
         gi.setUpdatedAt(Instant.now());
-        return itemRepo.save(gi);
+        GalleryItem saved = itemRepo.save(gi);
+        tags.save(saved);
+        responses.invalidateAlbum(saved.getAlbumId());
+        return saved;
     }
 
     public void softDeleteItem(Long id) {
         var gi = itemRepo.findById(id).orElseThrow();
         gi.setDeletedAt(Instant.now());
         itemRepo.save(gi);
+        tags.forget(List.of(id));
+        responses.invalidateAlbum(gi.getAlbumId());
+    }
+
+    /**
+     * Visible items matching a tag query (every tag in {@code all}, at least one in {@code any}),
+     * newest first; the match itself runs on the in-memory {@link TagIndex}.
+     */
+    public Page<AlbumItemDto> search(String all, String any, Long albumId, int page, int size) {
+        if (size < 1 || size > 100) throw new IllegalArgumentException("size must be between 1 and 100");
+        var hits = tags.match(TagIndex.normalize(all), TagIndex.normalize(any), albumId, true);
+        long skip = (long) page * size;
+        List<Long> ids = new ArrayList<>(size);
+        var it = hits.getReverseIntIterator();
+        for (long i = 0; it.hasNext() && ids.size() < size; i++) {
+            int id = it.next();
+            if (i >= skip) ids.add((long) id);
+        }
+        Map<Long, GalleryItem> byId = new HashMap<>();
+        itemRepo.findAllById(ids).forEach(gi -> byId.put(gi.getId(), gi));
+        List<GalleryItem> found = ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+        return new PageImpl<>(found.stream().map(toDto(found)).toList(), PageRequest.of(page, size), hits.getLongCardinality());
+    }
+
+    public List<TagCountDto> tagCounts(Long albumId, int limit) {
+        return tags.counts(albumId, true, limit);
+    }
+
+    public List<TagCountDto> suggestTags(String prefix, int limit) {
+        return tags.suggest(prefix, true, limit);
     }
 
     public Page<AlbumItemDto> listItems(Long albumId, boolean onlyVisible, int page, int size) {
@@ -81,18 +160,24 @@ public class GalleryService {
                 ? itemRepo.findByAlbumIdAndVisibleTrueAndDeletedAtIsNull(albumId, pageable)
                 : itemRepo.findByAlbumIdAndDeletedAtIsNull(albumId, pageable);
 
-        // Batch-load uploads to avoid N+1
-        var uploadIds = pageItems.getContent().stream()
+        return pageItems.map(toDto(pageItems.getContent()));
+    }
+
+    /** Maps items to DTOs, batch-loading their uploads up front to avoid N+1 */
+    private Function<GalleryItem, AlbumItemDto> toDto(List<GalleryItem> items) {
+        var uploadIds = items.stream()
                 .map(GalleryItem::getUploadId)
                 .distinct()
                 .toList();
 
         var uploadsById = uploadRepo.findAllById(uploadIds).stream()
-                .collect(java.util.stream.Collectors.toMap(Upload::getId, java.util.function.Function.identity()));
+                .collect(java.util.stream.Collectors.toMap(Upload::getId, Function.identity()));
 
-        return pageItems.map(it -> {
+        return it -> {
             Upload up = uploadsById.get(it.getUploadId());
             String ct = (up != null) ? up.getContentType() : null;
+            String fingerprint = (up != null) ? up.getFingerprint() : null;
+            boolean sized = up != null && up.getWidth() != null && up.getWidth() > 0;
             return new AlbumItemDto(
                     it.getId(),
                     it.getUploadId(),
@@ -101,21 +186,50 @@ public class GalleryService {
                     it.getTags(),
                     it.getPosition(),
                     it.isVisible(),
-                    ct
+                    ct,
+                    fingerprint,
+                    sized ? up.getWidth() : null,
+                    sized ? up.getHeight() : null,
+                    up != null ? up.getDurationMs() : null,
+                    up != null ? up.getBlurhash() : null
             );
-        });
+        };
     }
 
-    public List<GalleryItem> bulkReorder(Long albumId, List<Long> orderedItemIds) {
-        // minimal reorder: update 'position' according to index
-        var items = itemRepo.findByAlbumIdAndDeletedAtIsNull(albumId, PageRequest.of(0, Integer.MAX_VALUE)).getContent();
-        var posMap = new java.util.HashMap<Long, Integer>();
-        for (int i = 0; i < orderedItemIds.size(); i++) posMap.put(orderedItemIds.get(i), i);
-        for (var gi : items) {
-            if (posMap.containsKey(gi.getId())) {
-                gi.setPosition(posMap.get(gi.getId()));
-            }
+    /**
+     * Applies moves in order ("X after Y"). Each usually changes only the moved item's position,
+     * written with one batched UPDATE; the album is renumbered only when neighbours run out of room.
+     */
+    @Transactional
+    public List<ItemPositionDto> move(Long albumId, List<ItemMoveDto> moves) {
+        AlbumOrder order = new AlbumOrder(itemRepo.findRanks(albumId));
+        for (ItemMoveDto m : moves) {
+            if (m.itemId() == null) throw new IllegalArgumentException("itemId is required");
+            order.move(m.itemId(), m.afterItemId(), m.beforeItemId());
         }
-        return itemRepo.saveAll(items);
+        return applyPositions(albumId, order.changes());
+    }
+
+    /** Reorders the given items among the positions they already hold; other items don't move */
+    @Transactional
+    public List<GalleryItem> bulkReorder(Long albumId, List<Long> orderedItemIds) {
+        AlbumOrder order = new AlbumOrder(itemRepo.findRanks(albumId));
+        order.reorder(orderedItemIds);
+        applyPositions(albumId, order.changes());
+        return itemRepo.findAllById(orderedItemIds);
+    }
+
+    private List<ItemPositionDto> applyPositions(Long albumId, Map<Long, Integer> changes) {
+        if (changes.isEmpty()) return List.of();
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = new ArrayList<>(changes.size());
+        List<ItemPositionDto> out = new ArrayList<>(changes.size());
+        changes.forEach((id, position) -> {
+            args.add(new Object[]{position, now, id});
+            out.add(new ItemPositionDto(id, position));
+        });
+        jdbc.batchUpdate(SET_POSITION, args);
+        responses.invalidateAlbum(albumId);
+        return out;
     }
 }
@@ -0,0 +1,20 @@
+package com.vivekanand.manager.gallery;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/** One normalized tag of a gallery item; {@link GalleryItem#getTags()} keeps the joined form for display */
+@Data
+@Entity
+@Table(name = "gallery_item_tags",
+        uniqueConstraints = @UniqueConstraint(name = "uk_gallery_item_tags_item_tag", columnNames = {"itemId", "tag"}),
+        indexes = @Index(name = "idx_gallery_item_tags_tag", columnList = "tag"))
+public class ItemTag {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(nullable = false)
+    private Long itemId;
+    @Column(nullable = false, length = TagIndex.MAX_TAG_LENGTH)
+    private String tag;
+}
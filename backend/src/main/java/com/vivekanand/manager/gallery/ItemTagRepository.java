@@ -0,0 +1,28 @@
+package com.vivekanand.manager.gallery;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ItemTagRepository extends JpaRepository<ItemTag, Long> {
+    interface TagRow {
+        String getTag();
+
+        Long getItemId();
+
+        Long getAlbumId();
+
+        boolean isVisible();
+    }
+
+    @Modifying
+    @Query("delete from ItemTag t where t.itemId in :itemIds")
+    int deleteByItemIdIn(Collection<Long> itemIds);
+
+    /** Every tag of every live item, for building the in-memory index */
+    @Query("select t.tag as tag, g.id as itemId, g.albumId as albumId, g.visible as visible from ItemTag t, GalleryItem g where g.id = t.itemId and g.deletedAt is null")
+    List<TagRow> findLiveTags();
+}
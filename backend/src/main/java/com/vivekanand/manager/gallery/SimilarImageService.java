@@ -0,0 +1,260 @@
+package com.vivekanand.manager.gallery;
+
+import com.vivekanand.manager.gallery.dto.DuplicateClusterDto;
+import com.vivekanand.manager.gallery.dto.SimilarImageDto;
+import com.vivekanand.manager.uploads.ImageVariantService;
+import com.vivekanand.manager.uploads.RemoteBlobCache;
+import com.vivekanand.manager.uploads.Upload;
+import com.vivekanand.manager.uploads.UploadRepository;
+import com.vivekanand.manager.uploads.UploadStoredEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near-duplicate detection for gallery images: the same photo re-compressed, resized or
+ * screenshotted gets a different SHA-256 but (nearly) the same 64-bit dHash.
+ * <p>
+ * Hashes are computed on a single low-priority thread after an image upload is stored, saved on
+ * the upload row and indexed in an in-memory {@link BkTree}, so a lookup is a bounded tree walk
+ * rather than a comparison against every image. On startup the tree is loaded from the rows, then
+ * images stored before hashing existed (or whose event was dropped) are backfilled.
+ * <p>
+ * Results are restricted to uploads that a live gallery item still uses, library-wide or within
+ * one album.
+ */
+@Service
+public class SimilarImageService {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarImageService.class);
+    private static final int HASH_WIDTH = 9, HASH_HEIGHT = 8; // 8 comparisons per row, 64 bits
+    private static final int DECODE_WIDTH = 64;
+    private static final int MAX_DISTANCE_LIMIT = 16; // past this dHash matches unrelated images
+
+    private final UploadRepository uploads;
+    private final GalleryItemRepository items;
+    private final AlbumRepository albums;
+    private final RemoteBlobCache remoteCache;
+    private final int defaultMaxDistance;
+    private final int batchSize;
+    private final BkTree tree = new BkTree();
+    private final Map<Long, Long> hashes = new ConcurrentHashMap<>(); // upload id -> dHash
+    private final ThreadPoolExecutor pool;
+
+    public SimilarImageService(UploadRepository uploads, GalleryItemRepository items, AlbumRepository albums,
+                               RemoteBlobCache remoteCache,
+                               @Value("${gallery.similar.maxDistance:10}") int defaultMaxDistance,
+                               @Value("${gallery.similar.batchSize:200}") int batchSize) {
+        this.uploads = uploads;
+        this.items = items;
+        this.albums = albums;
+        this.remoteCache = remoteCache;
+        this.defaultMaxDistance = defaultMaxDistance;
+        this.batchSize = batchSize;
+        // a full queue drops work: the next startup's backfill picks those images up
+        this.pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(10_000),
+                r -> {
+                    Thread t = new Thread(r, "image-hash");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        pool.execute(() -> {
+            try {
+                loadIndex();
+                backfill();
+            } catch (RuntimeException e) {
+                log.warn("Perceptual hash index load failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /** After commit, so the update of the new row can't race its insert */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadStored(UploadStoredEvent event) {
+        Upload u = event.upload();
+        if (isImage(u)) pool.execute(() -> index(u));
+    }
+
+    /** Images within {@code maxDistance} of the upload's hash, closest first */
+    public List<SimilarImageDto> similar(Long uploadId, Long albumId, Integer maxDistance) {
+        int radius = radius(maxDistance);
+        Long hash = hashes.get(uploadId);
+        if (hash == null) {
+            hash = uploads.findById(uploadId).orElseThrow().getPerceptualHash();
+            if (hash == null) throw new IllegalArgumentException("Upload is not an indexed image");
+        }
+
+        Map<Long, Integer> found = new HashMap<>();
+        tree.search(hash, radius, (id, d) -> {
+            if (id != uploadId) found.put(id, d);
+        });
+        if (found.isEmpty()) return List.of();
+        Set<Long> live = new HashSet<>(albumId == null
+                ? items.findLiveUploadIdsIn(found.keySet())
+                : albumUploadIds(albumId));
+        return found.entrySet().stream()
+                .filter(e -> live.contains(e.getKey()))
+                .map(e -> new SimilarImageDto(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparingInt(SimilarImageDto::distance).thenComparing(SimilarImageDto::uploadId))
+                .toList();
+    }
+
+    /**
+     * Groups of images that are transitively within {@code maxDistance} of each other, largest
+     * first. Cleanup candidates: typically all but the oldest member can go.
+     */
+    public List<DuplicateClusterDto> clusters(Long albumId, Integer maxDistance, int limit) {
+        int radius = radius(maxDistance);
+        Set<Long> scope = new HashSet<>(albumId == null ? items.findLiveUploadIds() : albumUploadIds(albumId));
+
+        Map<Long, Long> parent = new HashMap<>();
+        Map<Long, Integer> spread = new HashMap<>(); // per root: largest distance of a merged link
+        for (Long id : scope) {
+            Long hash = hashes.get(id);
+            if (hash == null) continue;
+            tree.search(hash, radius, (other, d) -> {
+                if (other > id && scope.contains(other)) {
+                    long a = find(parent, id), b = find(parent, other);
+                    int s = Math.max(d, Math.max(spread.getOrDefault(a, 0), spread.getOrDefault(b, 0)));
+                    if (a != b) parent.put(Math.max(a, b), Math.min(a, b));
+                    spread.put(Math.min(a, b), s);
+                }
+            });
+        }
+
+        Map<Long, List<Long>> groups = new HashMap<>();
+        for (Long id : parent.keySet()) groups.computeIfAbsent(find(parent, id), k -> new ArrayList<>()).add(id);
+        return groups.entrySet().stream()
+                .filter(e -> e.getValue().size() > 1)
+                .map(e -> {
+                    List<Long> members = new ArrayList<>(e.getValue());
+                    Collections.sort(members);
+                    return new DuplicateClusterDto(members, spread.getOrDefault(e.getKey(), 0));
+                })
+                .sorted(Comparator.comparingInt((DuplicateClusterDto c) -> -c.uploadIds().size())
+                        .thenComparing(c -> c.uploadIds().get(0)))
+                .limit(Math.max(1, limit))
+                .toList();
+    }
+
+    /** Root of {@code id} in the union-find forest (roots are the smallest id), with path halving */
+    private static long find(Map<Long, Long> parent, long id) {
+        parent.putIfAbsent(id, id);
+        long cur = id;
+        while (parent.get(cur) != cur) {
+            long grand = parent.get(parent.get(cur));
+            parent.put(cur, grand);
+            cur = grand;
+        }
+        return cur;
+    }
+
+    private int radius(Integer maxDistance) {
+        int r = maxDistance == null ? defaultMaxDistance : maxDistance;
+        if (r < 0 || r > MAX_DISTANCE_LIMIT) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + MAX_DISTANCE_LIMIT);
+        }
+        return r;
+    }
+
+    private List<Long> albumUploadIds(Long albumId) {
+        if (!albums.existsById(albumId)) throw new NoSuchElementException("Album not found");
+        return items.findLiveUploadIdsByAlbumId(albumId);
+    }
+
+    private void loadIndex() {
+        long lastId = 0;
+        List<UploadRepository.PerceptualHashRow> page;
+        while (!(page = uploads.findPerceptualHashes(lastId, PageRequest.of(0, batchSize))).isEmpty()) {
+            for (var row : page) add(row.getId(), row.getHash());
+            lastId = page.get(page.size() - 1).getId();
+        }
+        log.info("Loaded {} perceptual hashes", tree.size());
+    }
+
+    private void backfill() {
+        long lastId = 0, hashed = 0;
+        List<Upload> page;
+        while (!(page = uploads.findImagesWithoutPerceptualHash(lastId, PageRequest.of(0, batchSize))).isEmpty()) {
+            for (Upload u : page) {
+                if (u.isReady() && index(u)) hashed++;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        if (hashed > 0) log.info("Backfilled perceptual hashes for {} images", hashed);
+    }
+
+    private boolean index(Upload u) {
+        String path = u.getStoragePath();
+        Optional<Path> source = path != null && path.contains("://")
+                ? remoteCache.fetch(u)
+                : ImageVariantService.localSource(u);
+        if (source.isEmpty()) return false;
+        try {
+            long hash = dHash(ImageVariantService.decode(source.get(), DECODE_WIDTH));
+            uploads.setPerceptualHash(u.getId(), hash);
+            add(u.getId(), hash);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Could not hash upload {}: {}", u.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void add(long uploadId, long hash) {
+        if (hashes.put(uploadId, hash) == null) tree.add(hash, uploadId);
+    }
+
+    /**
+     * Difference hash: shrink to 9x8 grey, then one bit per horizontally adjacent pair (is the left
+     * pixel brighter?). Survives rescaling, recompression and mild colour changes; crops and
+     * rotations do change it.
+     */
+    static long dHash(BufferedImage img) {
+        BufferedImage small = ImageVariantService.scale(img, HASH_WIDTH, HASH_HEIGHT);
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash <<= 1;
+                if (luma(small.getRGB(x, y)) > luma(small.getRGB(x + 1, y))) hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    private static int luma(int rgb) {
+        return (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+    }
+
+    private static boolean isImage(Upload u) {
+        return u.getContentType() != null && u.getContentType().startsWith("image/");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
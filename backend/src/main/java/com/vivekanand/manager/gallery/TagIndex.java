@@ -0,0 +1,280 @@
+package com.vivekanand.manager.gallery;
+
+import com.vivekanand.manager.gallery.dto.TagCountDto;
+import jakarta.transaction.Transactional;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tags of live gallery items: normalized rows in {@code gallery_item_tags} plus an in-memory
+ * inverted index of Roaring bitmaps (tag -> item ids), so AND/OR queries, facet counts and
+ * autocomplete are bitmap operations instead of {@code LIKE} scans.
+ * <p>
+ * The index is built from the rows on startup (after creating rows for items tagged before this
+ * table existed) and then kept current by {@link GalleryService} on add, update and soft delete,
+ * and by bulk upload deletes. Item ids are stored as ints. Those in-memory changes are applied once
+ * the row changes commit, so searches never see uncommitted tags and a rollback leaves the index
+ * matching the table.
+ */
+@Service
+public class TagIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(TagIndex.class);
+    public static final int MAX_TAG_LENGTH = 64;
+
+    private record Indexed(long albumId, boolean visible, List<String> tags) {
+    }
+
+    private final ItemTagRepository rows;
+    private final GalleryItemRepository items;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, RoaringBitmap> byTag = new TreeMap<>();
+    private final Map<Long, RoaringBitmap> byAlbum = new HashMap<>(); // tagged items only
+    private final RoaringBitmap visible = new RoaringBitmap();
+    private final Map<Long, Indexed> indexed = new HashMap<>();
+
+    public TagIndex(ItemTagRepository rows, GalleryItemRepository items) {
+        this.rows = rows;
+        this.items = items;
+    }
+
+    /** Trimmed, lower-cased, inner whitespace collapsed, empty and duplicate tags dropped */
+    public static List<String> normalize(String raw) {
+        if (raw == null || raw.isBlank()) return List.of();
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        for (String part : raw.split(",")) {
+            String t = part.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (t.isEmpty()) continue;
+            if (t.length() > MAX_TAG_LENGTH) throw new IllegalArgumentException("Tag too long (max " + MAX_TAG_LENGTH + ")");
+            out.add(t);
+        }
+        return List.copyOf(out);
+    }
+
+    /** The normalized tags joined back into the stored {@code GalleryItem.tags} form; null when there are none */
+    public static String canonical(String raw) {
+        List<String> tags = normalize(raw);
+        return tags.isEmpty() ? null : String.join(",", tags);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<GalleryItem> untagged = items.findWithTagsButNoTagRows();
+        for (GalleryItem gi : untagged) {
+            try {
+                rows.saveAll(toRows(gi.getId(), normalize(gi.getTags())));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping tags of gallery item {}: {}", gi.getId(), e.getMessage());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            byTag.clear();
+            byAlbum.clear();
+            visible.clear();
+            indexed.clear();
+            Map<Long, List<String>> tagsByItem = new HashMap<>();
+            Map<Long, ItemTagRepository.TagRow> itemRows = new HashMap<>();
+            for (var r : rows.findLiveTags()) {
+                tagsByItem.computeIfAbsent(r.getItemId(), k -> new ArrayList<>()).add(r.getTag());
+                itemRows.putIfAbsent(r.getItemId(), r);
+            }
+            tagsByItem.forEach((id, tags) -> {
+                var r = itemRows.get(id);
+                add(id, new Indexed(r.getAlbumId(), r.isVisible(), tags));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Tag index: {} tags over {} items ({} rows backfilled from legacy tags)",
+                byTag.size(), indexed.size(), untagged.size());
+    }
+
+    /** Replaces the item's tag rows with its current tags and re-indexes it after commit */
+    @Transactional
+    public void save(GalleryItem gi) {
+        List<String> tags = normalize(gi.getTags());
+        rows.deleteByItemIdIn(List.of(gi.getId()));
+        rows.saveAll(toRows(gi.getId(), tags));
+        long id = gi.getId();
+        Indexed entry = gi.getDeletedAt() == null && !tags.isEmpty()
+                ? new Indexed(gi.getAlbumId(), gi.isVisible(), tags)
+                : null;
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(id);
+                if (entry != null) add(id, entry);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Drops items from the index (after commit, inside a transaction); their rows stay for
+     * soft-deleted items, and are deleted by the caller otherwise
+     */
+    public void forget(Collection<Long> itemIds) {
+        List<Long> ids = List.copyOf(itemIds);
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                ids.forEach(this::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Removes the tags of the gallery items using these uploads, ahead of those items being
+     * hard-deleted (upload deletes) in the same transaction.
+     */
+    @Transactional
+    public void deleteForUploads(Collection<Long> uploadIds) {
+        List<Long> itemIds = items.findIdsByUploadIdIn(uploadIds);
+        if (itemIds.isEmpty()) return;
+        rows.deleteByItemIdIn(itemIds);
+        forget(itemIds);
+    }
+
+    /**
+     * Items having every tag in {@code all} and, if {@code any} is non-empty, at least one of
+     * {@code any}; optionally limited to one album and to visible items.
+     */
+    public RoaringBitmap match(List<String> all, List<String> any, Long albumId, boolean onlyVisible) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = null;
+            for (String t : all) {
+                RoaringBitmap b = byTag.get(t);
+                if (b == null) return new RoaringBitmap();
+                result = result == null ? b.clone() : RoaringBitmap.and(result, b);
+            }
+            if (!any.isEmpty()) {
+                RoaringBitmap union = new RoaringBitmap();
+                for (String t : any) {
+                    RoaringBitmap b = byTag.get(t);
+                    if (b != null) union.or(b);
+                }
+                result = result == null ? union : RoaringBitmap.and(result, union);
+            }
+            if (result == null) throw new IllegalArgumentException("No tags given");
+            return scope(result, albumId, onlyVisible);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Facets: every tag with its number of items, most used first */
+    public List<TagCountDto> counts(Long albumId, boolean onlyVisible, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap scope = scope(null, albumId, onlyVisible);
+            List<TagCountDto> out = new ArrayList<>();
+            byTag.forEach((tag, b) -> {
+                long n = scope == null ? b.getLongCardinality() : RoaringBitmap.andCardinality(b, scope);
+                if (n > 0) out.add(new TagCountDto(tag, n));
+            });
+            return top(out, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Autocomplete: tags starting with {@code prefix}, most used first */
+    public List<TagCountDto> suggest(String prefix, boolean onlyVisible, int limit) {
+        String p = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            List<TagCountDto> out = new ArrayList<>();
+            for (var e : byTag.tailMap(p, true).entrySet()) {
+                if (!e.getKey().startsWith(p)) break;
+                long n = onlyVisible ? RoaringBitmap.andCardinality(e.getValue(), visible) : e.getValue().getLongCardinality();
+                if (n > 0) out.add(new TagCountDto(e.getKey(), n));
+            }
+            return top(out, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@code base} (null = everything) restricted to the album and visibility; null when unrestricted */
+    private RoaringBitmap scope(RoaringBitmap base, Long albumId, boolean onlyVisible) {
+        RoaringBitmap result = base;
+        if (albumId != null) {
+            RoaringBitmap album = byAlbum.getOrDefault(albumId, new RoaringBitmap());
+            result = result == null ? album.clone() : RoaringBitmap.and(result, album);
+        }
+        if (onlyVisible) {
+            result = result == null ? visible.clone() : RoaringBitmap.and(result, visible);
+        }
+        return result;
+    }
+
+    private static List<TagCountDto> top(List<TagCountDto> counts, int limit) {
+        counts.sort(Comparator.comparingLong(TagCountDto::count).reversed().thenComparing(TagCountDto::tag));
+        return counts.size() > limit ? List.copyOf(counts.subList(0, Math.max(0, limit))) : counts;
+    }
+
+    // callers hold the write lock
+    private void add(long itemId, Indexed entry) {
+        int id = Math.toIntExact(itemId);
+        for (String t : entry.tags()) byTag.computeIfAbsent(t, k -> new RoaringBitmap()).add(id);
+        byAlbum.computeIfAbsent(entry.albumId(), k -> new RoaringBitmap()).add(id);
+        if (entry.visible()) visible.add(id);
+        indexed.put(itemId, entry);
+    }
+
+    private void remove(long itemId) {
+        Indexed entry = indexed.remove(itemId);
+        if (entry == null) return;
+        int id = Math.toIntExact(itemId);
+        for (String t : entry.tags()) {
+            RoaringBitmap b = byTag.get(t);
+            if (b != null) {
+                b.remove(id);
+                if (b.isEmpty()) byTag.remove(t);
+            }
+        }
+        RoaringBitmap album = byAlbum.get(entry.albumId());
+        if (album != null) album.remove(id);
+        visible.remove(id);
+    }
+
+    /** Runs {@code change} once the surrounding transaction commits (never on rollback), or right away without one */
+    private static void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    private static List<ItemTag> toRows(Long itemId, List<String> tags) {
+        List<ItemTag> out = new ArrayList<>(tags.size());
+        for (String t : tags) {
+            ItemTag row = new ItemTag();
+            row.setItemId(itemId);
+            row.setTag(t);
+            out.add(row);
+        }
+        return out;
+    }
+}
@@ -8,5 +8,10 @@ public record AlbumItemDto(
         String tags,
         Integer position,
         Boolean visible,
-        String contentType // <- from Upload.contentType
+        String contentType, // <- from Upload.contentType
+        String fingerprint, // <- Upload.getFingerprint(), for ?v= on public media URLs
+        Integer width,      // intrinsic px, upright; null until extracted or when unreadable
+        Integer height,
+        Long durationMs,    // videos only
+        String blurhash     // ~28-char placeholder (https://blurha.sh)
 ) {}
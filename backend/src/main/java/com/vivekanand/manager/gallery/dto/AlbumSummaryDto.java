@@ -0,0 +1,28 @@
+package com.vivekanand.manager.gallery.dto;
+
+import java.time.Instant;
+
+/** One album of the public listing: the album itself plus what its cards need, without per-album calls */
+public record AlbumSummaryDto(
+        Long id,
+        String name,
+        String description,
+        Long coverUploadId,
+        boolean visible,
+        Instant createdAt,
+        Instant updatedAt,
+        long itemCount,       // live (not soft-deleted) items
+        long visibleCount,
+        long totalBytes,      // sum over live items; a blob used twice counts twice
+        Instant lastUpdatedAt, // latest of the album's and its live items' updatedAt
+        Cover cover           // null without a (still existing) cover upload
+) {
+    public record Cover(
+            Long uploadId,
+            String contentType,
+            String fingerprint, // for ?v= on public media URLs
+            Integer width,
+            Integer height,
+            String blurhash
+    ) {}
+}
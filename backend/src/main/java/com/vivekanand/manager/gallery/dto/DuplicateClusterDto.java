@@ -0,0 +1,8 @@
+package com.vivekanand.manager.gallery.dto;
+
+import java.util.List;
+
+public record DuplicateClusterDto(
+        List<Long> uploadIds, // oldest first: usually the one to keep
+        int maxDistance       // largest distance between linked members
+) {}
@@ -0,0 +1,7 @@
+package com.vivekanand.manager.gallery.dto;
+
+public record ItemMoveDto(
+        Long itemId,
+        Long afterItemId, // place right after this item...
+        Long beforeItemId // ...or right before this one; neither = front of the album
+) {}
@@ -0,0 +1,3 @@
+package com.vivekanand.manager.gallery.dto;
+
+public record ItemPositionDto(Long id, int position) {}
@@ -0,0 +1,6 @@
+package com.vivekanand.manager.gallery.dto;
+
+public record SimilarImageDto(
+        Long uploadId,
+        int distance // Hamming distance between the 64-bit perceptual hashes, 0 = visually identical
+) {}
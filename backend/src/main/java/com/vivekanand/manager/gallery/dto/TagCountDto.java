@@ -0,0 +1,3 @@
+package com.vivekanand.manager.gallery.dto;
+
+public record TagCountDto(String tag, long count) {}
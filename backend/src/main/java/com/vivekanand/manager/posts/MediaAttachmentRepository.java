@@ -2,7 +2,19 @@ package com.vivekanand.manager.posts;
 
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface MediaAttachmentRepository extends JpaRepository<MediaAttachment, Long> {
     void deleteByUploadId(Long uploadId);
+
+    @Modifying
+    @Query("delete from MediaAttachment m where m.uploadId in :uploadIds")
+    int deleteByUploadIdIn(Collection<Long> uploadIds);
+
+    @Query("select distinct m.uploadId from MediaAttachment m where m.uploadId in :uploadIds")
+    List<Long> findReferencedUploadIds(Collection<Long> uploadIds);
 }
\ No newline at end of file
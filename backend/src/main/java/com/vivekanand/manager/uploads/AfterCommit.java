@@ -0,0 +1,25 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Defers side effects that can't be rolled back (provider deletes) until the database change is committed */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /** Runs {@code task} after the current transaction commits, or right away outside a transaction */
+    static void run(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+}
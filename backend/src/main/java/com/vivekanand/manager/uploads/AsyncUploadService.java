@@ -0,0 +1,186 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async ingest: the request only stages the bytes and saves a PENDING {@link Upload}; pushing to
+ * the storage provider happens on a bounded worker pool, with exponential backoff between attempts.
+ * <p>
+ * Pending bytes are kept at {@code <stagingDir>/pending/<uploadId>.part}, so uploads still PENDING
+ * at shutdown are picked up again on the next start. When the queue is full, new submissions get
+ * 503 instead of piling up on disk.
+ */
+@Service
+public class AsyncUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncUploadService.class);
+    private static final long MAX_BACKOFF_SECONDS = 300;
+
+    private final UploadRepository repo;
+    private final StorageService storage;
+    private final UploadStaging staging;
+    private final UploadMetadataCache metadata;
+    private final int maxAttempts;
+    private final ThreadPoolExecutor pool;
+    private final ScheduledExecutorService retries;
+
+    private record Job(Long uploadId, StagedUpload staged, int attempt) {
+    }
+
+    public AsyncUploadService(UploadRepository repo, StorageService storage, UploadStaging staging,
+                              UploadMetadataCache metadata,
+                              @Value("${storage.async.workers:4}") int workers,
+                              @Value("${storage.async.queueCapacity:1000}") int queueCapacity,
+                              @Value("${storage.async.maxAttempts:5}") int maxAttempts) {
+        this.repo = repo;
+        this.storage = storage;
+        this.staging = staging;
+        this.metadata = metadata;
+        this.maxAttempts = maxAttempts;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ingest-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.retries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ingest-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Stages the file and returns the PENDING row; the provider write happens in the background */
+    public Upload submit(MultipartFile file) {
+        if (pool.getQueue().remainingCapacity() == 0) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Upload queue is full, retry shortly");
+        }
+        if (file.getSize() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+        staging.checkContentType(file.getContentType());
+
+        StagedUpload staged;
+        try (InputStream in = file.getInputStream()) {
+            staged = staging.stage(in, file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
+        }
+
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(file.getOriginalFilename()));
+        u.setContentType(file.getContentType());
+        u.setSizeBytes(staged.sizeBytes());
+        u.setStatus(UploadStatus.PENDING);
+        try {
+            u = repo.save(u);
+            Path pending = pendingFile(u.getId());
+            Files.createDirectories(pending.getParent());
+            Files.move(staged.path(), pending, StandardCopyOption.ATOMIC_MOVE);
+            enqueue(new Job(u.getId(), new StagedUpload(pending, staged.contentHash(), staged.sizeBytes()), 1));
+            return u;
+        } catch (IOException | RuntimeException e) {
+            staging.discard(staged);
+            if (u.getId() != null) fail(u.getId(), "Could not queue upload");
+            throw new RuntimeException("Upload failed", e);
+        }
+    }
+
+    /** Re-queues uploads that were still PENDING when the application stopped */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        for (Upload u : repo.findByStatus(UploadStatus.PENDING)) {
+            Path pending = pendingFile(u.getId());
+            try {
+                enqueue(new Job(u.getId(), staging.adopt(pending, u.getContentType()), 1));
+            } catch (IOException | RuntimeException e) {
+                fail(u.getId(), "Staged bytes lost before the upload was stored");
+            }
+        }
+    }
+
+    private void enqueue(Job job) {
+        try {
+            pool.execute(() -> process(job));
+        } catch (RejectedExecutionException e) {
+            // only reachable for retries/resumes (submit checks capacity): try again later
+            retries.schedule(() -> enqueue(job), backoffSeconds(job.attempt()), TimeUnit.SECONDS);
+        }
+    }
+
+    private void process(Job job) {
+        Upload u = repo.findById(job.uploadId()).orElse(null);
+        if (u == null || u.getStatus() != UploadStatus.PENDING) {
+            staging.discard(job.staged()); // deleted (or already handled) while queued
+            return;
+        }
+        try {
+            u.setStatus(UploadStatus.READY);
+            u.setFailureReason(null);
+            storage.storeRetryable(job.staged(), u);
+            staging.discard(job.staged());
+            metadata.evict(u.getId());
+        } catch (RuntimeException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (job.attempt() < maxAttempts) {
+                long delay = backoffSeconds(job.attempt());
+                log.info("Upload {} attempt {} failed ({}), retrying in {}s",
+                        job.uploadId(), job.attempt(), cause.getMessage(), delay);
+                Job next = new Job(job.uploadId(), job.staged(), job.attempt() + 1);
+                retries.schedule(() -> enqueue(next), delay, TimeUnit.SECONDS);
+            } else {
+                log.warn("Upload {} failed after {} attempts", job.uploadId(), job.attempt(), cause);
+                staging.discard(job.staged());
+                fail(job.uploadId(), cause.getMessage());
+            }
+        }
+    }
+
+    private void fail(Long id, String reason) {
+        repo.findById(id).ifPresent(u -> {
+            u.setStatus(UploadStatus.FAILED);
+            u.setFailureReason(reason == null ? "Upload failed"
+                    : reason.length() > 500 ? reason.substring(0, 500) : reason);
+            repo.save(u);
+            metadata.evict(id);
+        });
+    }
+
+    private long backoffSeconds(int attempt) {
+        return Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempt * 2, 20)); // 4s, 16s, 64s, 256s, ...
+    }
+
+    private Path pendingFile(Long uploadId) {
+        return staging.stagingDir().resolve("pending").resolve(uploadId + ".part");
+    }
+
+    public int queued() {
+        return pool.getQueue().size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retries.shutdownNow();
+        pool.shutdown(); // anything not finished stays PENDING and resumes on the next start
+    }
+}
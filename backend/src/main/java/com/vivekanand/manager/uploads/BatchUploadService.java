@@ -0,0 +1,198 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.gallery.AlbumRepository;
+import com.vivekanand.manager.gallery.GalleryItem;
+import com.vivekanand.manager.gallery.GalleryItemRepository;
+import com.vivekanand.manager.gallery.GalleryResponseCache;
+import com.vivekanand.manager.uploads.dto.BatchUploadResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Many files in one request: each part is staged and written to the {@link StorageService} on a
+ * shared bounded pool, then all successful rows are inserted with a single JDBC batch (and,
+ * optionally, appended to a gallery album) in one transaction. One bad file doesn't fail the rest.
+ * <p>
+ * When the pool is saturated the request thread writes its own parts, so concurrent batches slow
+ * down instead of queueing without bound.
+ */
+@Service
+public class BatchUploadService {
+
+    // includes the media metadata a deduplicated part copies from an earlier upload (Upload#copyMediaMetadata)
+    private static final String INSERT_UPLOAD = "insert into uploads (original_filename, content_type, size_bytes, "
+            + "provider_id, storage_path, content_hash, uploaded_at, status, width, height, duration_ms, blurhash) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final StorageService storage;
+    private final UploadStaging staging;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final AlbumRepository albums;
+    private final GalleryItemRepository items;
+    private final GalleryResponseCache galleryResponses;
+    private final ApplicationEventPublisher events;
+    private final int maxFiles;
+    private final ThreadPoolExecutor pool;
+
+    public BatchUploadService(StorageService storage, UploadStaging staging, JdbcTemplate jdbc,
+                              TransactionTemplate tx, AlbumRepository albums, GalleryItemRepository items,
+                              GalleryResponseCache galleryResponses, ApplicationEventPublisher events,
+                              @Value("${storage.batch.parallelism:4}") int parallelism,
+                              @Value("${storage.batch.maxFiles:300}") int maxFiles) {
+        this.storage = storage;
+        this.staging = staging;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.albums = albums;
+        this.items = items;
+        this.galleryResponses = galleryResponses;
+        this.events = events;
+        this.maxFiles = maxFiles;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(parallelism * 4),
+                r -> {
+                    Thread t = new Thread(r, "batch-upload-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public List<BatchUploadResult> upload(List<MultipartFile> files, Long albumId) {
+        if (files == null || files.isEmpty()) throw new IllegalArgumentException("No files");
+        if (files.size() > maxFiles) throw new IllegalArgumentException("Too many files (max " + maxFiles + ")");
+        if (albumId != null && !albums.existsById(albumId)) throw new NoSuchElementException("Album not found");
+
+        List<Future<Upload>> writes = new ArrayList<>(files.size());
+        for (MultipartFile f : files) {
+            writes.add(pool.submit(() -> write(f)));
+        }
+
+        BatchUploadResult[] results = new BatchUploadResult[files.size()];
+        List<Integer> okIndexes = new ArrayList<>();
+        List<Upload> written = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getOriginalFilename();
+            try {
+                written.add(writes.get(i).get());
+                okIndexes.add(i);
+            } catch (ExecutionException e) {
+                results[i] = new BatchUploadResult(i, name, null, null, message(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[i] = new BatchUploadResult(i, name, null, null, "Interrupted");
+            }
+        }
+
+        List<GalleryItem> added = tx.execute(status -> {
+            insert(written);
+            return albumId != null ? addToAlbum(albumId, written) : List.<GalleryItem>of();
+        });
+
+        for (int k = 0; k < written.size(); k++) {
+            Upload u = written.get(k);
+            int i = okIndexes.get(k);
+            Long itemId = added.isEmpty() ? null : added.get(k).getId();
+            results[i] = new BatchUploadResult(i, files.get(i).getOriginalFilename(), u, itemId, null);
+            events.publishEvent(new UploadStoredEvent(u));
+        }
+        return List.of(results);
+    }
+
+    private Upload write(MultipartFile file) throws IOException {
+        if (file.getSize() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+        staging.checkContentType(file.getContentType());
+        StagedUpload staged;
+        try (InputStream in = file.getInputStream()) {
+            staged = staging.stage(in, file.getContentType());
+        }
+        try {
+            Upload u = new Upload();
+            u.setOriginalFilename(StringUtils.cleanPath(file.getOriginalFilename()));
+            u.setContentType(file.getContentType());
+            return storage.write(staged, u);
+        } finally {
+            staging.discard(staged);
+        }
+    }
+
+    /** One multi-row batch; generated ids are copied back onto the entities in order */
+    private void insert(List<Upload> uploads) {
+        if (uploads.isEmpty()) return;
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(INSERT_UPLOAD, new String[]{"id"})) {
+                for (Upload u : uploads) {
+                    u.setStatus(UploadStatus.READY);
+                    ps.setString(1, u.getOriginalFilename());
+                    ps.setString(2, u.getContentType());
+                    if (u.getSizeBytes() != null) ps.setLong(3, u.getSizeBytes());
+                    else ps.setNull(3, Types.BIGINT);
+                    ps.setString(4, u.getProviderId());
+                    ps.setString(5, u.getStoragePath());
+                    ps.setString(6, u.getContentHash());
+                    ps.setTimestamp(7, Timestamp.from(u.getUploadedAt()));
+                    ps.setString(8, u.getStatus().name());
+                    ps.setObject(9, u.getWidth(), Types.INTEGER);
+                    ps.setObject(10, u.getHeight(), Types.INTEGER);
+                    ps.setObject(11, u.getDurationMs(), Types.BIGINT);
+                    ps.setString(12, u.getBlurhash());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (Upload u : uploads) {
+                        if (!keys.next()) throw new IllegalStateException("Missing generated id for batch insert");
+                        u.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private List<GalleryItem> addToAlbum(Long albumId, List<Upload> uploads) {
+        int position = items.maxPosition(albumId);
+        List<GalleryItem> toSave = new ArrayList<>(uploads.size());
+        for (Upload u : uploads) {
+            GalleryItem gi = new GalleryItem();
+            gi.setAlbumId(albumId);
+            gi.setUploadId(u.getId());
+            gi.setPosition(position += GalleryItem.RANK_GAP);
+            toSave.add(gi);
+        }
+        galleryResponses.invalidateAlbum(albumId);
+        return items.saveAll(toSave);
+    }
+
+    private String message(Throwable e) {
+        if (e instanceof IllegalArgumentException) return e.getMessage();
+        return "Upload failed";
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,105 @@
+package com.vivekanand.manager.uploads;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * <a href="https://blurha.sh">BlurHash</a> encoder: a handful of DCT components in base83, which
+ * clients decode into a blurred placeholder. With 4x3 (or 3x4) components the string is 28
+ * characters. Feed it a small image (a few dozen pixels wide); the cost is pixels x components.
+ */
+final class Blurhash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private Blurhash() {
+    }
+
+    /** Four components along the long side, three along the short one */
+    static String encode(BufferedImage img) {
+        boolean landscape = img.getWidth() >= img.getHeight();
+        return encode(img, landscape ? 4 : 3, landscape ? 3 : 4);
+    }
+
+    static String encode(BufferedImage img, int componentsX, int componentsY) {
+        int w = img.getWidth(), h = img.getHeight();
+        double[] r = new double[w * h], g = new double[w * h], b = new double[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int rgb = img.getRGB(x, y);
+                r[y * w + x] = toLinear((rgb >> 16) & 0xff);
+                g[y * w + x] = toLinear((rgb >> 8) & 0xff);
+                b[y * w + x] = toLinear(rgb & 0xff);
+            }
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                double sr = 0, sg = 0, sb = 0;
+                for (int y = 0; y < h; y++) {
+                    double cy = Math.cos(Math.PI * j * y / h);
+                    for (int x = 0; x < w; x++) {
+                        double basis = Math.cos(Math.PI * i * x / w) * cy;
+                        sr += basis * r[y * w + x];
+                        sg += basis * g[y * w + x];
+                        sb += basis * b[y * w + x];
+                    }
+                }
+                double scale = (i == 0 && j == 0 ? 1.0 : 2.0) / (w * h);
+                factors[j * componentsX + i] = new double[]{sr * scale, sg * scale, sb * scale};
+            }
+        }
+
+        StringBuilder out = new StringBuilder(4 + 2 * factors.length);
+        encode83((componentsX - 1) + (componentsY - 1) * 9, 1, out);
+
+        double maxAc = 0;
+        for (int k = 1; k < factors.length; k++) {
+            for (double v : factors[k]) maxAc = Math.max(maxAc, Math.abs(v));
+        }
+        double acScale;
+        if (factors.length > 1) {
+            int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(maxAc * 166 - 0.5)));
+            acScale = (quantisedMax + 1) / 166.0;
+            encode83(quantisedMax, 1, out);
+        } else {
+            acScale = 1;
+            encode83(0, 1, out);
+        }
+
+        double[] dc = factors[0];
+        encode83((toSrgb(dc[0]) << 16) + (toSrgb(dc[1]) << 8) + toSrgb(dc[2]), 4, out);
+        for (int k = 1; k < factors.length; k++) {
+            double[] f = factors[k];
+            encode83(quantiseAc(f[0], acScale) * 19 * 19 + quantiseAc(f[1], acScale) * 19 + quantiseAc(f[2], acScale), 2, out);
+        }
+        return out.toString();
+    }
+
+    private static int quantiseAc(double value, double scale) {
+        double v = Math.copySign(Math.sqrt(Math.abs(value / scale)), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(v * 9 + 9.5)));
+    }
+
+    private static double toLinear(int srgb) {
+        double v = srgb / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int toSrgb(double linear) {
+        double v = Math.max(0, Math.min(1, linear));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void encode83(int value, int length, StringBuilder out) {
+        int divisor = 1;
+        for (int i = 1; i < length; i++) divisor *= 83;
+        for (int i = 0; i < length; i++) {
+            out.append(BASE83.charAt((value / divisor) % 83));
+            divisor /= 83;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.finance.FinancialRecordRepository;
+import com.vivekanand.manager.gallery.AlbumRepository;
+import com.vivekanand.manager.gallery.GalleryItemRepository;
+import com.vivekanand.manager.gallery.GalleryResponseCache;
+import com.vivekanand.manager.gallery.TagIndex;
+import com.vivekanand.manager.posts.MediaAttachmentRepository;
+import com.vivekanand.manager.uploads.dto.BulkDeleteRequest;
+import com.vivekanand.manager.uploads.dto.BulkDeleteResult;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Deletes many uploads in one transaction with the same cascades as a single delete (post
+ * attachments, financial records, gallery items, albums using one as cover), but as one
+ * {@code DELETE ... WHERE upload_id IN (...)} per table instead of one round trip per upload and
+ * table. Provider objects are removed in bulk once the transaction has committed.
+ */
+@Service
+public class BulkDeleteService {
+
+    private final UploadRepository uploads;
+    private final StorageService storage;
+    private final MediaAttachmentRepository attachments;
+    private final FinancialRecordRepository financialRecords;
+    private final GalleryItemRepository galleryItems;
+    private final AlbumRepository albums;
+    private final TagIndex tags;
+    private final GalleryResponseCache galleryResponses;
+    private final int maxIds;
+
+    public BulkDeleteService(UploadRepository uploads, StorageService storage, MediaAttachmentRepository attachments,
+                             FinancialRecordRepository financialRecords, GalleryItemRepository galleryItems,
+                             AlbumRepository albums, TagIndex tags, GalleryResponseCache galleryResponses,
+                             @Value("${storage.bulkDelete.maxIds:1000}") int maxIds) {
+        this.uploads = uploads;
+        this.storage = storage;
+        this.attachments = attachments;
+        this.financialRecords = financialRecords;
+        this.galleryItems = galleryItems;
+        this.albums = albums;
+        this.tags = tags;
+        this.galleryResponses = galleryResponses;
+        this.maxIds = maxIds;
+    }
+
+    @Transactional
+    public BulkDeleteResult delete(BulkDeleteRequest req) {
+        Set<Long> ids = new LinkedHashSet<>();
+        if (req.ids() != null) ids.addAll(req.ids());
+        if (req.albumId() != null) {
+            if (!albums.existsById(req.albumId())) throw new NoSuchElementException("Album not found");
+            ids.addAll(galleryItems.findUploadIdsByAlbumId(req.albumId()));
+        }
+        ids.remove(null);
+        if (ids.isEmpty()) throw new IllegalArgumentException("No uploads selected");
+        if (ids.size() > maxIds) throw new IllegalArgumentException("Too many uploads (max " + maxIds + ")");
+
+        List<Upload> found = uploads.findAllById(ids);
+        List<Long> foundIds = found.stream().map(Upload::getId).toList();
+        if (!foundIds.isEmpty()) {
+            attachments.deleteByUploadIdIn(foundIds);
+            financialRecords.deleteByUploadIdIn(foundIds);
+            tags.deleteForUploads(foundIds);
+            galleryItems.deleteByUploadIdIn(foundIds);
+            albums.deleteByCoverUploadIdIn(foundIds);
+            galleryResponses.invalidateAll();
+            storage.deleteAll(found);
+        }
+
+        foundIds.forEach(ids::remove);
+        return new BulkDeleteResult(foundIds.size(), List.copyOf(ids));
+    }
+}
@@ -0,0 +1,62 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.http.MediaType;
+
+import java.util.Optional;
+
+/**
+ * Upload metadata as the public media endpoints need it: the row plus the type decisions derived
+ * from it, computed once when the entry is loaded into {@link UploadMetadataCache}.
+ *
+ * @param contentType lower-cased content type, inferred from filename/path when missing
+ * @param publicAllowed images and mp4 videos only
+ */
+public record CachedUpload(Upload upload, String contentType, boolean publicAllowed,
+                           boolean image, boolean videoMp4) {
+
+    static CachedUpload of(Upload u) {
+        String name = u.getOriginalFilename();
+        String path = u.getStoragePath();
+        String ct = normalizeContentType(u.getContentType(), name, path);
+        boolean image = ct.startsWith("image/") || hasImageExt(name) || hasImageExt(path);
+        boolean mp4 = ct.equals("video/mp4") || endsWith(name, ".mp4") || endsWith(path, ".mp4");
+        return new CachedUpload(u, ct, image || mp4, image, mp4);
+    }
+
+    /** Rough heap footprint, used as the cache weight */
+    int weight() {
+        return 256 + 2 * (length(upload.getOriginalFilename()) + length(upload.getStoragePath())
+                + length(upload.getProviderId()) + length(upload.getContentHash()) + length(contentType));
+    }
+
+    public boolean isRemote() {
+        String path = upload.getStoragePath();
+        return path != null && path.contains("://");
+    }
+
+    /** Normalize content type using filename/path if missing */
+    private static String normalizeContentType(String ct, String name, String path) {
+        String lower = Optional.ofNullable(ct).orElse("").toLowerCase();
+        if (!lower.isBlank()) return lower;
+
+        String target = (Optional.ofNullable(name).orElse("") + " " + Optional.ofNullable(path).orElse("")).toLowerCase();
+        if (target.endsWith(".png")) return "image/png";
+        if (target.endsWith(".webp")) return "image/webp";
+        if (target.endsWith(".jpg") || target.endsWith(".jpeg")) return "image/jpeg";
+        if (target.endsWith(".mp4")) return "video/mp4";
+
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static boolean hasImageExt(String s) {
+        return endsWith(s, ".jpg") || endsWith(s, ".jpeg") || endsWith(s, ".png") || endsWith(s, ".webp");
+    }
+
+    private static boolean endsWith(String s, String suffix) {
+        return Optional.ofNullable(s).orElse("").toLowerCase().endsWith(suffix);
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
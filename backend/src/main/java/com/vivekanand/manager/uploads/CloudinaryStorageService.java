@@ -2,79 +2,158 @@ package com.vivekanand.manager.uploads;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 @Service
 @ConditionalOnProperty(name = "storage.provider", havingValue = "cloudinary")
 public class CloudinaryStorageService implements StorageService {
 
+    // Cloudinary's single-request upload caps out around 100 MB; above this we use chunked uploadLarge
+    private static final long LARGE_UPLOAD_BYTES = 20L * 1024 * 1024;
+    // Admin API limit for public ids per delete_resources call
+    private static final int DELETE_BATCH = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(CloudinaryStorageService.class);
+
     private final Cloudinary cloudinary;
     private final UploadRepository repo;
-    private final long maxBytes;
-    private final Set<String> allowed = Set.of(
-            "application/pdf", "image/png", "image/jpeg", "image/jpg", "video/mp4"
-    );
+    private final UploadStaging staging;
+    private final ApplicationEventPublisher events;
+    private final UploadMetadataCache metadata;
     private final String baseFolder;
 
     public CloudinaryStorageService(
             Cloudinary cloudinary,
             UploadRepository repo,
-            @Value("${storage.maxFileSizeMb}") int maxMb,
+            UploadStaging staging,
+            ApplicationEventPublisher events,
+            UploadMetadataCache metadata,
             @Value("${cloudinary.folder:myapp/uploads}") String baseFolder
     ) {
         this.cloudinary = cloudinary;
         this.repo = repo;
-        this.maxBytes = maxMb * 1024L * 1024L;
+        this.staging = staging;
+        this.events = events;
+        this.metadata = metadata;
         this.baseFolder = baseFolder;
     }
 
     @Override
     public Upload store(MultipartFile file) {
-        if (file.getSize() > maxBytes) throw new IllegalArgumentException("File too large");
-        if (!allowed.contains(file.getContentType())) throw new IllegalArgumentException("Unsupported file type");
+        if (file.getSize() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+        staging.checkContentType(file.getContentType());
+
+        StagedUpload staged;
+        try (InputStream in = file.getInputStream()) {
+            staged = staging.stage(in, file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("Cloudinary upload failed", e);
+        }
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(file.getOriginalFilename()));
+        u.setContentType(file.getContentType()); // client-reported
+        return store(staged, u);
+    }
 
-        String fn = StringUtils.cleanPath(file.getOriginalFilename());
-        LocalDate d = LocalDate.now();
-        String folderPath = baseFolder + "/" + d.getYear() + "/" + String.format("%02d", d.getMonthValue());
+    /**
+     * Content-addressed push: the asset's public_id is the SHA-256 of its bytes under
+     * {@code <folder>/ab/cd}, so identical files are uploaded to Cloudinary only once. The staged
+     * file is streamed from disk, never loaded into the heap.
+     */
+    @Override
+    public Upload store(StagedUpload staged, Upload u) {
+        try {
+            return storeRetryable(staged, u);
+        } finally {
+            staging.discard(staged);
+        }
+    }
+
+    @Override
+    public Upload storeRetryable(StagedUpload staged, Upload u) {
+        write(staged, u);
+        try {
+            Upload saved = repo.save(u);
+            events.publishEvent(new UploadStoredEvent(saved));
+            return saved;
+        } catch (Exception e) {
+            throw new RuntimeException("Cloudinary upload failed", e);
+        }
+    }
 
+    @Override
+    public Upload write(StagedUpload staged, Upload u) {
         try {
+            String hash = staged.contentHash();
+            if (copyExisting(hash, u)) return u;
+
             Map<String, Object> options = ObjectUtils.asMap(
                     "resource_type", "auto",       // image/video/raw(pdf)
-                    "folder", folderPath,
-                    "use_filename", true,
-                    "unique_filename", true
+                    "folder", baseFolder + "/" + ContentAddress.shardDir(hash),
+                    "public_id", hash,
+                    "overwrite", false
             );
 
-            Map<String, Object> uploadResult = cloudinary.uploader().upload(file.getBytes(), options);
+            File file = staged.path().toFile();
+            Map<String, Object> uploadResult = staged.sizeBytes() > LARGE_UPLOAD_BYTES
+                    ? cloudinary.uploader().uploadLarge(file, options)
+                    : cloudinary.uploader().upload(file, options);
             String secureUrl = (String) uploadResult.get("secure_url");
             String publicId = (String) uploadResult.get("public_id");
-            Object bytesObj = uploadResult.getOrDefault("bytes", file.getSize());
-            long bytes = (bytesObj instanceof Number) ? ((Number) bytesObj).longValue() : file.getSize();
+            Object bytesObj = uploadResult.getOrDefault("bytes", staged.sizeBytes());
+            long bytes = (bytesObj instanceof Number) ? ((Number) bytesObj).longValue() : staged.sizeBytes();
 
-            Upload u = new Upload();
-            u.setOriginalFilename(fn);
-            u.setContentType(file.getContentType()); // client-reported
             u.setSizeBytes(bytes);
+            u.setContentHash(hash);
             u.setProviderId(publicId);
             u.setStoragePath(secureUrl);
             u.setUploadedAt(Instant.now());
-            return repo.save(u);
+            return u;
         } catch (Exception e) {
             throw new RuntimeException("Cloudinary upload failed", e);
         }
     }
 
+    @Override
+    public Optional<Upload> linkExisting(String contentHash, String originalFilename) {
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(originalFilename));
+        return copyExisting(ContentAddress.normalize(contentHash), u) ? Optional.of(repo.save(u)) : Optional.empty();
+    }
+
+    /** Points {@code u} at an asset already uploaded for the same bytes; nothing is saved */
+    private boolean copyExisting(String hash, Upload u) {
+        return repo.findFirstByContentHashOrderByIdAsc(hash)
+                .filter(existing -> existing.getProviderId() != null)
+                .map(existing -> {
+                    if (u.getContentType() == null) u.setContentType(existing.getContentType());
+                    u.setSizeBytes(existing.getSizeBytes());
+                    u.setContentHash(hash);
+                    u.setProviderId(existing.getProviderId());
+                    u.setStoragePath(existing.getStoragePath());
+                    u.copyMediaMetadata(existing);
+                    u.setUploadedAt(Instant.now());
+                    return true;
+                })
+                .orElse(false);
+    }
+
     @Override
     public Optional<String> downloadUrl(Upload upload) {
         // For Cloudinary, storagePath holds secure URL
@@ -87,18 +166,140 @@ public class CloudinaryStorageService implements StorageService {
 
     @Override
     public Resource loadAsResource(Upload upload) {
+        if (!holds(upload) && upload.getStoragePath() != null && !upload.getStoragePath().contains("://")) {
+            return new FileSystemResource(upload.getStoragePath()); // local file not migrated yet
+        }
         throw new UnsupportedOperationException("Cloudinary resources must be accessed via URL");
     }
 
+    @Override
+    public boolean holds(Upload upload) {
+        return upload.getProviderId() != null;
+    }
+
+    /** Deletes the row; the asset is removed after commit if no other row shares it (see {@link #deleteAll}) */
     @Override
     public void delete(Upload upload) {
-        try {
-            if (upload.getProviderId() != null) {
-                cloudinary.uploader().destroy(upload.getProviderId(), ObjectUtils.emptyMap());
+        deleteAll(List.of(upload));
+    }
+
+    /**
+     * One DELETE for the rows; after commit the assets no other row shares are removed with the
+     * Admin API's batch delete, grouped by resource type, re-checked first in case the same bytes
+     * were uploaded again in the meantime. A failed call only logs: the assets are now unreferenced
+     * and the reconciler's sweep retries them.
+     */
+    @Override
+    public void deleteAll(Collection<Upload> uploads) {
+        if (uploads.isEmpty()) return;
+        repo.deleteByIdIn(uploads.stream().map(Upload::getId).toList());
+        uploads.forEach(u -> metadata.evict(u.getId()));
+
+        Set<String> providerIds = new HashSet<>();
+        uploads.forEach(u -> { if (u.getProviderId() != null) providerIds.add(u.getProviderId()); });
+        if (providerIds.isEmpty()) return;
+        repo.findProviderIdsIn(providerIds).forEach(providerIds::remove); // still shared by other rows
+
+        Map<String, List<String>> byType = new LinkedHashMap<>();
+        for (Upload u : uploads) {
+            if (providerIds.remove(u.getProviderId())) {
+                byType.computeIfAbsent(resourceType(u), k -> new ArrayList<>()).add(u.getProviderId());
             }
-            repo.delete(upload);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to delete Cloudinary file", e);
         }
+        if (byType.isEmpty()) return;
+        AfterCommit.run(() -> {
+            Set<String> relinked = new HashSet<>(repo.findProviderIdsIn(
+                    byType.values().stream().flatMap(List::stream).toList()));
+            byType.forEach((type, ids) -> {
+                List<String> doomed = ids.stream().filter(id -> !relinked.contains(id)).toList();
+                if (!doomed.isEmpty()) deleteResources(type, doomed);
+            });
+        });
+    }
+
+    private void deleteResources(String resourceType, List<String> publicIds) {
+        for (int i = 0; i < publicIds.size(); i += DELETE_BATCH) {
+            List<String> chunk = publicIds.subList(i, Math.min(i + DELETE_BATCH, publicIds.size()));
+            try {
+                cloudinary.api().deleteResources(chunk, ObjectUtils.asMap("resource_type", resourceType));
+            } catch (Exception e) {
+                log.warn("Could not delete {} Cloudinary {} assets: {}", chunk.size(), resourceType, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Assets are uploaded with resource_type "auto", so the type is taken from the delivery URL
+     * ({@code https://res.cloudinary.com/<cloud>/<type>/upload/...}); destroy and delete default to
+     * "image" and silently miss videos and raw files otherwise.
+     */
+    static String resourceType(Upload u) {
+        String path = u.getStoragePath();
+        if (path != null) {
+            try {
+                String[] seg = URI.create(path).getPath().split("/");
+                if (seg.length > 3 && seg[3].equals("upload")) return seg[2];
+            } catch (IllegalArgumentException ignored) {
+                // fall back to the content type
+            }
+        }
+        String ct = u.getContentType();
+        if (ct != null && ct.startsWith("video/")) return "video";
+        if (ct != null && (ct.startsWith("image/") || ct.equals("application/pdf"))) return "image";
+        return "raw";
+    }
+
+    /**
+     * Pages through the assets under the configured folder (Admin API, one listing per resource
+     * type) and deletes those whose public id no row carries.
+     */
+    @Override
+    public SweepResult sweepUnreferenced(Instant cutoff, int batchSize, Runnable pause) {
+        long objects = 0, bytes = 0;
+        for (String resourceType : List.of("image", "video", "raw")) {
+            String cursor = null;
+            do {
+                Map<String, Object> options = ObjectUtils.asMap(
+                        "resource_type", resourceType,
+                        "type", "upload",
+                        "prefix", baseFolder + "/",
+                        "max_results", Math.min(batchSize, 500));
+                if (cursor != null) options.put("next_cursor", cursor);
+                Map<?, ?> page;
+                try {
+                    page = cloudinary.api().resources(options);
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to list Cloudinary resources", e);
+                }
+                cursor = (String) page.get("next_cursor");
+
+                Map<String, Long> candidates = new LinkedHashMap<>();
+                for (Object o : (List<?>) page.get("resources")) {
+                    Map<?, ?> r = (Map<?, ?>) o;
+                    Object created = r.get("created_at");
+                    if (created == null || !Instant.parse(created.toString()).isBefore(cutoff)) continue;
+                    Object size = r.get("bytes");
+                    candidates.put((String) r.get("public_id"), size instanceof Number n ? n.longValue() : 0L);
+                }
+                if (!candidates.isEmpty()) {
+                    repo.findProviderIdsIn(candidates.keySet()).forEach(candidates::remove);
+                }
+                if (!candidates.isEmpty()) {
+                    List<String> ids = new ArrayList<>(candidates.keySet());
+                    try {
+                        for (int i = 0; i < ids.size(); i += DELETE_BATCH) {
+                            cloudinary.api().deleteResources(ids.subList(i, Math.min(i + DELETE_BATCH, ids.size())),
+                                    ObjectUtils.asMap("resource_type", resourceType));
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException("Failed to delete Cloudinary resources", e);
+                    }
+                    objects += candidates.size();
+                    bytes += candidates.values().stream().mapToLong(Long::longValue).sum();
+                }
+                pause.run();
+            } while (cursor != null);
+        }
+        return new SweepResult(objects, bytes);
     }
 }
@@ -0,0 +1,50 @@
+package com.vivekanand.manager.uploads;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SHA-256 content addressing shared by the storage providers.
+ * Blobs live under {@code ab/cd/abcd...} so no directory grows past 256 entries per level.
+ */
+final class ContentAddress {
+
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    private ContentAddress() {
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /** Lower-cases and validates a client supplied hash; throws IllegalArgumentException (-> 400) when malformed */
+    static String normalize(String hash) {
+        String h = hash == null ? "" : hash.trim().toLowerCase(Locale.ROOT);
+        if (!SHA256_HEX.matcher(h).matches()) {
+            throw new IllegalArgumentException("Invalid SHA-256 hash");
+        }
+        return h;
+    }
+
+    /** Sharded directory for a hash, e.g. {@code ab/cd} */
+    static String shardDir(String hash) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4);
+    }
+
+    /** Sharded relative key for a hash, e.g. {@code ab/cd/abcd...} */
+    static String shardedKey(String hash) {
+        return shardDir(hash) + "/" + hash;
+    }
+}
@@ -0,0 +1,189 @@
+package com.vivekanand.manager.uploads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded directory of derived or cached files with LRU eviction.
+ * <p>
+ * Keys are relative paths ({@code <owner>/<name>}); the in-memory index is an access-ordered map of
+ * key -> bytes that is rebuilt from the directory (oldest mtime first) on startup. Files are written
+ * to a temp name and moved into place, so readers never see partial content.
+ */
+public class DiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskCache.class);
+
+    @FunctionalInterface
+    public interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DiskCache(Path dir, long maxBytes) {
+        this.dir = dir.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(this.dir);
+            rebuildIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot initialise cache dir " + this.dir, e);
+        }
+    }
+
+    public Optional<Path> get(String key) {
+        Path p = resolve(key);
+        synchronized (this) {
+            if (index.get(key) != null && Files.exists(p)) {
+                hits.incrementAndGet();
+                return Optional.of(p);
+            }
+            if (index.remove(key) != null) recount();
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public Path put(String key, Writer writer) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), ".", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writer.write(out);
+            }
+            return commit(key, tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Moves an already written file (on the same filesystem) into the cache under {@code key} */
+    public Path putFile(String key, Path file) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        return commit(key, file, target);
+    }
+
+    /** Drops every entry whose key starts with {@code prefix} (e.g. all variants of one upload) */
+    public synchronized void removePrefix(String prefix) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                deleteQuietly(resolve(e.getKey()));
+                totalBytes -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    public Path directory() {
+        return dir;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int entries() {
+        return index.size();
+    }
+
+    private Path commit(String key, Path file, Path target) throws IOException {
+        long size = Files.size(file);
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Long previous = index.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            evict(key);
+        }
+        return target;
+    }
+
+    /** Evicts least recently used entries until we are back under budget, never the entry just written */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getKey().equals(keep)) continue;
+            deleteQuietly(resolve(e.getKey()));
+            totalBytes -= e.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void recount() {
+        totalBytes = index.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private Path resolve(String key) {
+        Path p = dir.resolve(key).normalize();
+        if (!p.startsWith(dir) || p.equals(dir)) throw new IllegalArgumentException("Invalid cache key");
+        return p;
+    }
+
+    private void rebuildIndex() throws IOException {
+        List<Object[]> found = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                String name = p.getFileName().toString();
+                if (name.startsWith(".")) {
+                    deleteQuietly(p); // temp file from an interrupted write
+                    return;
+                }
+                try {
+                    BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+                    found.add(new Object[]{dir.relativize(p).toString().replace('\\', '/'), a.size(), a.lastModifiedTime().toMillis()});
+                } catch (IOException ignored) {
+                    // vanished while scanning
+                }
+            });
+        }
+        found.sort(Comparator.comparingLong(o -> (Long) o[2]));
+        for (Object[] f : found) {
+            index.put((String) f[0], (Long) f[1]);
+            totalBytes += (Long) f[1];
+        }
+        evict(null);
+        log.info("Disk cache {}: {} entries, {} bytes", dir, index.size(), totalBytes);
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) {
+            // next startup scan will retry
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.vivekanand.manager.uploads;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap copies of the few small images that get most public traffic (album covers, banners,
+ * grid variants), so {@link LocalMediaStreamer} can answer them without a stat, open or read.
+ * <p>
+ * Two admission gates keep one-off requests out: a file is only loaded after it has been missed
+ * {@code media.hotAdmitAfter} times recently, and Caffeine's W-TinyLFU policy then decides whether
+ * it is worth more than the entry it would evict. Loads happen on {@link MediaWorkers}, never on
+ * the request thread. Files are immutable once stored (content-addressed blobs, cached variants),
+ * so entries are keyed by path alone.
+ * <p>
+ * Direct memory of evicted entries is released when the buffers are collected; keep
+ * {@code -XX:MaxDirectMemorySize} above {@code media.hotCacheMb}.
+ */
+@Component
+public class HotMediaCache {
+
+    /** Bytes plus the validators {@link LocalMediaStreamer} would otherwise read from the file system */
+    public record Entry(ByteBuffer data, long lastModified) {
+        public long size() {
+            return data.capacity();
+        }
+    }
+
+    private final Cache<Path, Entry> cache;
+    private final Cache<Path, AtomicInteger> misses;
+    private final MediaWorkers workers;
+    private final long maxEntryBytes;
+    private final int admitAfter;
+
+    public HotMediaCache(MediaWorkers workers, MeterRegistry meters,
+                         @Value("${media.hotCacheMb:64}") long maxMb,
+                         @Value("${media.hotMaxEntryKb:512}") long maxEntryKb,
+                         @Value("${media.hotAdmitAfter:2}") int admitAfter) {
+        this.workers = workers;
+        this.maxEntryBytes = maxEntryKb * 1024;
+        this.admitAfter = admitAfter;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMb * 1024 * 1024)
+                .weigher((Path p, Entry e) -> e.data().capacity())
+                .expireAfterAccess(Duration.ofHours(6))
+                .recordStats()
+                .build();
+        this.misses = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .build();
+        CaffeineCacheMetrics.monitor(meters, cache, "hotMedia");
+    }
+
+    /**
+     * Cached bytes for {@code file}, or null. A miss counts towards admission and may queue a
+     * background load; {@code contentType} limits the cache to images.
+     */
+    public Entry get(Path file, String contentType) {
+        if (contentType == null || !contentType.startsWith("image/")) return null;
+        Entry e = cache.getIfPresent(file);
+        if (e != null) return e;
+
+        AtomicInteger count = misses.get(file, k -> new AtomicInteger());
+        if (count.incrementAndGet() == admitAfter) {
+            workers.submit(() -> load(file));
+        }
+        return null;
+    }
+
+    public void evict(Path file) {
+        cache.invalidate(file);
+        misses.invalidate(file);
+    }
+
+    private void load(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0 || size > maxEntryBytes) return; // stays counted, so it isn't retried until the count expires
+            long lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+            ByteBuffer buf = ByteBuffer.allocateDirect((int) size);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) return; // shrank underneath us
+            }
+            buf.flip();
+            cache.put(file, new Entry(buf.asReadOnlyBuffer(), lastModified));
+            misses.invalidate(file);
+        } catch (IOException e) {
+            // deleted or unreadable: the normal path reports it
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.vivekanand.manager.uploads;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * EXIF orientation support. ImageIO ignores the tag while browsers honour it, so without this a
+ * phone photo's thumbnail would come out sideways next to its correctly rotated original.
+ */
+final class ImageOrientation {
+
+    private ImageOrientation() {
+    }
+
+    /** EXIF orientation (1-8) of a JPEG, 1 when absent or unreadable */
+    static int read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readUnsignedShort() != 0xFFD8) return 1;
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) return 1;
+                int len = in.readUnsignedShort() - 2;
+                if (len < 0) return 1;
+                if (marker == 0xFFE1) {
+                    int o = parseExif(in.readNBytes(len));
+                    if (o > 0) return o;
+                } else {
+                    in.skipNBytes(len);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return 1;
+        }
+    }
+
+    static boolean swapsAxes(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    /** Returns an upright copy of {@code img} for the given EXIF orientation */
+    static BufferedImage apply(BufferedImage img, int orientation) {
+        if (orientation <= 1 || orientation > 8) return img;
+        int w = img.getWidth(), h = img.getHeight();
+        boolean swap = swapsAxes(orientation);
+        AffineTransform t = new AffineTransform();
+        switch (orientation) {
+            case 2 -> { t.translate(w, 0); t.scale(-1, 1); }                    // mirror
+            case 3 -> { t.translate(w, h); t.rotate(Math.PI); }                 // 180
+            case 4 -> { t.translate(0, h); t.scale(1, -1); }                    // flip
+            case 5 -> { t.rotate(Math.PI / 2); t.scale(1, -1); }                // transpose
+            case 6 -> { t.translate(h, 0); t.rotate(Math.PI / 2); }             // 90 cw
+            case 7 -> { t.translate(h, w); t.scale(-1, 1); t.rotate(-Math.PI / 2); } // transverse
+            case 8 -> { t.translate(0, w); t.rotate(-Math.PI / 2); }            // 90 ccw
+            default -> { }
+        }
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        var g = out.createGraphics();
+        try {
+            g.drawImage(img, t, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    private static int parseExif(byte[] b) {
+        if (b.length < 14 || !new String(b, 0, 4, StandardCharsets.US_ASCII).equals("Exif")) return 0;
+        int tiff = 6;
+        boolean le = b[tiff] == 'I';
+        int ifd = tiff + (int) u32(b, tiff + 4, le);
+        if (ifd + 2 > b.length) return 0;
+        int entries = u16(b, ifd, le);
+        for (int i = 0; i < entries; i++) {
+            int e = ifd + 2 + i * 12;
+            if (e + 12 > b.length) break;
+            if (u16(b, e, le) == 0x0112) return u16(b, e + 8, le);
+        }
+        return 0;
+    }
+
+    private static int u16(byte[] b, int p, boolean le) {
+        return le ? (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 : (b[p] & 0xFF) << 8 | (b[p + 1] & 0xFF);
+    }
+
+    private static long u32(byte[] b, int p, boolean le) {
+        return le ? (u16(b, p, true) | (long) u16(b, p + 2, true) << 16)
+                : ((long) u16(b, p, false) << 16 | u16(b, p + 2, false));
+    }
+}
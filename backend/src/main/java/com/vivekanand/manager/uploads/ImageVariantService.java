@@ -0,0 +1,234 @@
+package com.vivekanand.manager.uploads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resized variants (e.g. 320/640/1280 px wide) of locally stored images, kept in a size-bounded
+ * LRU {@link DiskCache}. Variants are pre-generated on the media pool when an upload is stored and
+ * otherwise rendered on first request (one render per key even under concurrent requests).
+ * <p>
+ * JPEG is always available. WebP is offered only when an ImageIO WebP writer is on the classpath,
+ * since the JDK doesn't ship one.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    private final DiskCache cache;
+    private final MediaWorkers workers;
+    private final List<Integer> widths;
+    private final float jpegQuality;
+    private final boolean webpAvailable;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageVariantService(MediaWorkers workers,
+                               @Value("${media.cacheDir:${storage.uploadDir}/.cache}") String cacheDir,
+                               @Value("${media.variantCacheMb:512}") long cacheMb,
+                               @Value("${media.variantWidths:320,640,1280}") String widths,
+                               @Value("${media.jpegQuality:0.8}") float jpegQuality) {
+        this.workers = workers;
+        this.cache = new DiskCache(Paths.get(cacheDir, "variants"), cacheMb * 1024 * 1024);
+        this.widths = Arrays.stream(widths.split(",")).map(String::trim).map(Integer::valueOf).sorted().toList();
+        this.jpegQuality = jpegQuality;
+        this.webpAvailable = ImageIO.getImageWritersByFormatName("webp").hasNext();
+    }
+
+    public boolean isAllowedWidth(int width) {
+        return widths.contains(width);
+    }
+
+    /** Explicit {@code ?format=} wins, then the Accept header; falls back to jpeg */
+    public String negotiateFormat(String requested, String accept) {
+        if (requested != null && !requested.isBlank()) {
+            String f = requested.toLowerCase(Locale.ROOT);
+            if (f.equals("webp") && webpAvailable) return "webp";
+            if (f.equals("jpeg") || f.equals("jpg") || f.equals("webp")) return "jpeg";
+            throw new IllegalArgumentException("Unsupported variant format");
+        }
+        return webpAvailable && accept != null && accept.contains("image/webp") ? "webp" : "jpeg";
+    }
+
+    public boolean isWebpAvailable() {
+        return webpAvailable;
+    }
+
+    public static String mediaType(String format) {
+        return "webp".equals(format) ? "image/webp" : "image/jpeg";
+    }
+
+    /**
+     * Returns the cached variant, rendering it from {@code source} on a miss. Variants are keyed by
+     * content hash, so deduplicated uploads share them.
+     */
+    public Path variant(Upload u, Path source, int width, String format) throws IOException {
+        String key = ownerKey(u) + "/w" + width + "." + ("webp".equals(format) ? "webp" : "jpg");
+        Optional<Path> cached = cache.get(key);
+        if (cached.isPresent()) return cached.get();
+
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new IOException("Variant rendering failed", e.getCause());
+            }
+        }
+        try {
+            Path p = cache.put(key, out -> render(source, width, format, out));
+            mine.complete(p);
+            return p;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Queues every configured width/format for background rendering */
+    public void pregenerate(Upload u, Path source) {
+        for (int w : widths) {
+            workers.submit(() -> render(u, source, w, "jpeg"));
+            if (webpAvailable) workers.submit(() -> render(u, source, w, "webp"));
+        }
+    }
+
+    @EventListener
+    public void onUploadStored(UploadStoredEvent event) {
+        Upload u = event.upload();
+        String ct = Optional.ofNullable(u.getContentType()).orElse("");
+        if (ct.startsWith("image/")) {
+            localSource(u).ifPresent(p -> pregenerate(u, p));
+        }
+    }
+
+    /** Local file backing an upload, empty for remote (URL or object store) storage or missing files */
+    public static Optional<Path> localSource(Upload u) {
+        String path = u.getStoragePath();
+        if (path == null || path.contains("://")) return Optional.empty(); // http(s) or s3
+        Path p = Paths.get(path).normalize();
+        return Files.exists(p) ? Optional.of(p) : Optional.empty();
+    }
+
+    public DiskCache cache() {
+        return cache;
+    }
+
+    private void render(Upload u, Path source, int width, String format) {
+        try {
+            variant(u, source, width, format);
+        } catch (IOException e) {
+            log.warn("Could not render {}px {} variant of upload {}: {}", width, format, u.getId(), e.getMessage());
+        }
+    }
+
+    private String ownerKey(Upload u) {
+        String hash = u.getContentHash();
+        return hash != null ? hash.substring(0, 2) + "/" + hash : "id/" + u.getId();
+    }
+
+    private void render(Path source, int width, String format, OutputStream out) throws IOException {
+        BufferedImage img = decode(source, width);
+        writeImage(img, format, jpegQuality, out);
+    }
+
+    /**
+     * Decodes at (roughly) no more than twice the target resolution using source subsampling, so a
+     * 12 MP photo never needs a full-size raster in memory, then scales and rotates upright.
+     */
+    public static BufferedImage decode(Path source, int targetWidth) throws IOException {
+        int orientation = ImageOrientation.read(source);
+        try (ImageInputStream iis = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int srcW = reader.getWidth(0), srcH = reader.getHeight(0);
+                int displayW = ImageOrientation.swapsAxes(orientation) ? srcH : srcW;
+                double scale = Math.min(1.0, targetWidth / (double) displayW);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int sub = (int) Math.floor(1 / (scale * 2));
+                if (sub > 1) param.setSourceSubsampling(sub, sub, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+
+                int w = Math.max(1, (int) Math.round(srcW * scale));
+                int h = Math.max(1, (int) Math.round(srcH * scale));
+                return ImageOrientation.apply(scale(decoded, w, h), orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Halves repeatedly with bilinear filtering before the final step; cheap and avoids aliasing */
+    public static BufferedImage scale(BufferedImage src, int w, int h) {
+        BufferedImage cur = src;
+        int cw = src.getWidth(), ch = src.getHeight();
+        do {
+            cw = Math.max(w, cw / 2);
+            ch = Math.max(h, ch / 2);
+            if (cur.getWidth() <= w * 2) {
+                cw = w;
+                ch = h;
+            }
+            BufferedImage next = new BufferedImage(cw, ch, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setColor(Color.WHITE); // flatten PNG transparency for JPEG
+                g.fillRect(0, 0, cw, ch);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(cur, 0, 0, cw, ch, null);
+            } finally {
+                g.dispose();
+            }
+            cur = next;
+        } while (cw != w || ch != h);
+        return cur;
+    }
+
+    static void writeImage(BufferedImage img, String format, float quality, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) throw new IOException("No ImageIO writer for " + format);
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionTypes() != null && param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(quality);
+            }
+            if (param.canWriteProgressive()) param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.ServletResponseWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves local media files straight from disk with HTTP Range support.
+ * <p>
+ * Single ranges and full bodies are handed to Tomcat's sendfile when the connector supports it,
+ * otherwise they are copied with {@link FileChannel#transferTo}. Either way the file never passes
+ * through the heap in one piece, which is what makes seeking in large mp4s cheap.
+ * <p>
+ * Full-body requests for small hot images are answered from {@link HotMediaCache} without touching
+ * the file system. A missing file surfaces as {@link java.nio.file.NoSuchFileException}.
+ */
+@Component
+public class LocalMediaStreamer {
+
+    // Tomcat sendfile contract (same attributes DefaultServlet uses)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // below this size the sendfile handoff costs more than a plain copy
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    private final HotMediaCache hot;
+
+    public LocalMediaStreamer(HotMediaCache hot) {
+        this.hot = hot;
+    }
+
+    public void stream(HttpServletRequest request, HttpServletResponse response, Path file,
+                       MediaType contentType, String contentDisposition, String cacheControl) throws IOException {
+        stream(request, response, file, contentType, contentDisposition, cacheControl, null);
+    }
+
+    /**
+     * @param validators ETag/Last-Modified to use instead of the file's size and mtime; when given,
+     *                   a matching If-None-Match/If-Modified-Since is answered with 304 before the
+     *                   file is even looked at
+     */
+    public void stream(HttpServletRequest request, HttpServletResponse response, Path file,
+                       MediaType contentType, String contentDisposition, String cacheControl,
+                       MediaValidators validators) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (validators != null && notModified(request, response, validators.etag(), validators.lastModified())) {
+            return;
+        }
+
+        HotMediaCache.Entry cached = request.getHeader(HttpHeaders.RANGE) == null
+                ? hot.get(file, contentType.toString())
+                : null;
+        final long size = cached != null ? cached.size() : Files.size(file);
+        final long fileModified = cached != null
+                ? cached.lastModified()
+                : Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+        final String etag = validators != null
+                ? validators.etag()
+                : "\"" + Long.toHexString(size) + "-" + Long.toHexString(fileModified) + "\"";
+        final long lastModified = validators != null && validators.lastModified() > 0
+                ? validators.lastModified()
+                : fileModified;
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (validators == null && notModified(request, response, etag, lastModified)) {
+            return;
+        }
+
+        if (cached != null) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(cached.size());
+            if (!isHead(request)) write(response, cached.data());
+            return;
+        }
+
+        List<HttpRange> ranges = List.of();
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, etag, lastModified)) {
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of(); // malformed Range -> ignore and serve the full body
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(size);
+            if (!isHead(request)) send(request, response, file, 0, size);
+            return;
+        }
+
+        long[][] bounds = new long[ranges.size()][];
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange r = ranges.get(i);
+            long start, end;
+            try {
+                start = r.getRangeStart(size);
+                end = r.getRangeEnd(size);
+            } catch (IllegalArgumentException e) {
+                start = size;
+                end = -1;
+            }
+            if (start >= size || end < start) {
+                bounds = null;
+                break;
+            }
+            bounds[i] = new long[]{start, end};
+        }
+        if (bounds == null || size == 0) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+
+        if (bounds.length == 1) {
+            long start = bounds[0][0], end = bounds[0][1];
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            response.setContentLengthLong(end - start + 1);
+            if (!isHead(request)) send(request, response, file, start, end - start + 1);
+            return;
+        }
+
+        // multipart/byteranges: length is computed up front so clients get a Content-Length
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        byte[][] partHeaders = new byte[bounds.length][];
+        long total = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            partHeaders[i] = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + bounds[i][0] + "-" + bounds[i][1] + "/" + size + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            total += partHeaders[i].length + (bounds[i][1] - bounds[i][0] + 1);
+        }
+        byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        total += trailer.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(total);
+        if (isHead(request)) return;
+
+        OutputStream out = response.getOutputStream();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            for (int i = 0; i < bounds.length; i++) {
+                out.write(partHeaders[i]);
+                transfer(ch, bounds[i][0], bounds[i][1] - bounds[i][0] + 1, target);
+            }
+        }
+        out.write(trailer);
+        out.flush();
+    }
+
+    /** If-None-Match / If-Modified-Since (and If-Match / If-Unmodified-Since -> 412) via Spring's shared logic */
+    private boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag, long lastModified) {
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    /**
+     * Hands a (direct) buffer to Tomcat without copying it through a heap array. The response is
+     * committed through any wrappers first so their on-commit headers are still written, then the
+     * body goes to the connector's own stream.
+     */
+    private void write(HttpServletResponse response, ByteBuffer data) throws IOException {
+        ServletResponse inner = response;
+        while (inner instanceof ServletResponseWrapper w) inner = w.getResponse();
+        if (inner != response) response.flushBuffer();
+
+        ServletOutputStream out = inner.getOutputStream();
+        if (out instanceof CoyoteOutputStream coyote) {
+            coyote.write(data.duplicate());
+        } else {
+            Channels.newChannel(out).write(data.duplicate());
+        }
+    }
+
+    private void send(HttpServletRequest request, HttpServletResponse response, Path file,
+                      long start, long length) throws IOException {
+        if (length >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(ch, start, length, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private void transfer(FileChannel ch, long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            long n = ch.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new IOException("File truncated while streaming");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /** If-Range: only honour the Range header when the client's validator still matches (strong comparison) */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null || ifRange.isBlank()) return true;
+        if (ifRange.startsWith("\"")) return ifRange.equals(etag);
+        if (ifRange.startsWith("W/")) return false;
+        try {
+            long since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .withZoneSameInstant(ZoneOffset.UTC).toInstant().toEpochMilli();
+            return since == lastModified;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private boolean isHead(HttpServletRequest request) {
+        return "HEAD".equalsIgnoreCase(request.getMethod());
+    }
+}
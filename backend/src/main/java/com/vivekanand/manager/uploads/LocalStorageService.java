@@ -1,77 +1,282 @@
 
 package com.vivekanand.manager.uploads;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 @Service
 @ConditionalOnProperty(name = "storage.provider", havingValue = "local", matchIfMissing = true)
 public class LocalStorageService implements StorageService {
 
+    private static final Logger log = LoggerFactory.getLogger(LocalStorageService.class);
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final int UNLINK_CHUNK = 100;
+
     private final Path baseDir;
-    private final long maxBytes;
-    private final Set<String> allowed = Set.of(
-            "application/pdf", "image/png", "image/jpeg", "image/jpg", "video/mp4"
-    );
     private final UploadRepository repo;
+    private final UploadStaging staging;
+    private final ApplicationEventPublisher events;
+    private final UploadMetadataCache metadata;
+    private final HotMediaCache hot;
+    private final ThreadPoolExecutor unlinker;
 
     public LocalStorageService(
             UploadRepository repo,
+            UploadStaging staging,
+            ApplicationEventPublisher events,
+            UploadMetadataCache metadata,
+            HotMediaCache hot,
             @Value("${storage.uploadDir}") String dir,
-            @Value("${storage.maxFileSizeMb}") int maxMb) {
+            @Value("${storage.local.unlinkThreads:2}") int unlinkThreads) {
         this.repo = repo;
-        this.baseDir = Paths.get(dir);
-        this.maxBytes = maxMb * 1024L * 1024L;
+        this.staging = staging;
+        this.events = events;
+        this.metadata = metadata;
+        this.hot = hot;
+        this.baseDir = Paths.get(dir).normalize();
+        AtomicInteger seq = new AtomicInteger();
+        this.unlinker = new ThreadPoolExecutor(unlinkThreads, unlinkThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000),
+                r -> {
+                    Thread t = new Thread(r, "upload-unlink-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.unlinker.allowCoreThreadTimeOut(true);
     }
 
     @Override
     public Upload store(MultipartFile file) {
-        if (file.getSize() > maxBytes) throw new IllegalArgumentException("File too large");
-        if (!allowed.contains(file.getContentType())) throw new IllegalArgumentException("Unsupported file type");
+        if (file.getSize() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+        staging.checkContentType(file.getContentType());
 
-        String fn = StringUtils.cleanPath(file.getOriginalFilename());
-        LocalDate d = LocalDate.now();
-        Path p = baseDir.resolve(d.getYear() + "/" + String.format("%02d", d.getMonthValue())).normalize();
+        StagedUpload staged;
+        try (InputStream in = file.getInputStream()) {
+            staged = staging.stage(in, file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
+        }
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(file.getOriginalFilename()));
+        u.setContentType(file.getContentType());
+        return store(staged, u);
+    }
 
+    /**
+     * Content-addressed write: the staged file is renamed to {@code baseDir/ab/cd/<sha256>}, so the
+     * bytes hit the disk once. If that blob already exists the staged copy is dropped and the Upload
+     * row simply references the existing blob.
+     */
+    @Override
+    public Upload store(StagedUpload staged, Upload u) {
         try {
-            if (!p.startsWith(baseDir)) {
-                throw new IllegalArgumentException("Invalid storage path");
-            }
-            Files.createDirectories(p);
-            Path target = p.resolve(System.currentTimeMillis() + "_" + fn).normalize();
-            try (InputStream in = file.getInputStream()) {
-                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
-            }
+            return storeRetryable(staged, u);
+        } finally {
+            staging.discard(staged);
+        }
+    }
 
-            Upload u = new Upload();
-            u.setOriginalFilename(fn);
-            u.setContentType(file.getContentType());
-            u.setSizeBytes(file.getSize());
+    @Override
+    public Upload storeRetryable(StagedUpload staged, Upload u) {
+        write(staged, u);
+        try {
+            Upload saved = repo.save(u);
+            events.publishEvent(new UploadStoredEvent(saved));
+            return saved;
+        } catch (Exception e) {
+            throw new RuntimeException("Upload failed", e);
+        }
+    }
+
+    @Override
+    public Upload write(StagedUpload staged, Upload u) {
+        try {
+            Path target = blobPath(staged.contentHash());
+            moveIntoPlace(staged.path(), target);
+
+            u.setSizeBytes(staged.sizeBytes());
+            u.setContentHash(staged.contentHash());
             u.setStoragePath(target.toString());
             u.setUploadedAt(Instant.now());
-
-            return repo.save(u);
+            return u;
         } catch (Exception e) {
             throw new RuntimeException("Upload failed", e);
         }
+    }
 
+    @Override
+    public Optional<Upload> linkExisting(String contentHash, String originalFilename) {
+        String hash = ContentAddress.normalize(contentHash);
+        return repo.findFirstByContentHashOrderByIdAsc(hash)
+                .filter(existing -> existing.getStoragePath() != null && Files.exists(Paths.get(existing.getStoragePath())))
+                .map(existing -> {
+                    Upload u = new Upload();
+                    u.setOriginalFilename(StringUtils.cleanPath(originalFilename));
+                    u.setContentType(existing.getContentType());
+                    u.setSizeBytes(existing.getSizeBytes());
+                    u.setContentHash(hash);
+                    u.setStoragePath(existing.getStoragePath());
+                    u.copyMediaMetadata(existing);
+                    u.setUploadedAt(Instant.now());
+                    return repo.save(u);
+                });
+    }
+
+    @Override
+    public boolean isMissing(Upload upload) {
+        return holds(upload) && !Files.exists(Paths.get(upload.getStoragePath()));
+    }
+
+    /**
+     * Walks the ab/cd/&lt;sha256&gt; blob tree (skipping dot-directories such as the staging area and
+     * caches) and removes blobs whose hash no row carries. Files with other names predate content
+     * addressing and are left alone. Abandoned top-level staging files are removed as well.
+     */
+    @Override
+    public SweepResult sweepUnreferenced(Instant cutoff, int batchSize, Runnable pause) {
+        long[] totals = new long[2];
+        Map<String, Path> batch = new LinkedHashMap<>();
+        try {
+            if (Files.isDirectory(baseDir)) {
+                Files.walkFileTree(baseDir, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return !dir.equals(baseDir) && dir.getFileName().toString().startsWith(".")
+                                ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        String name = file.getFileName().toString();
+                        if (attrs.isRegularFile() && BLOB_NAME.matcher(name).matches()
+                                && attrs.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                            batch.put(name, file);
+                            if (batch.size() >= batchSize) {
+                                sweepBatch(batch, totals);
+                                pause.run();
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE; // deleted underneath us
+                    }
+                });
+            }
+            sweepBatch(batch, totals);
+            sweepStaging(cutoff, totals);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to sweep local storage", e);
+        }
+        return new SweepResult(totals[0], totals[1]);
+    }
+
+    private void sweepBatch(Map<String, Path> batch, long[] totals) {
+        if (batch.isEmpty()) return;
+        Set<String> referenced = new HashSet<>(repo.findContentHashesIn(batch.keySet()));
+        batch.forEach((hash, file) -> {
+            if (referenced.contains(hash)) return;
+            try {
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file)) {
+                    hot.evict(file.normalize());
+                    totals[0]++;
+                    totals[1] += size;
+                }
+            } catch (IOException ignored) {
+                // next run
+            }
+        });
+        batch.clear();
+    }
+
+    /** Temp files of requests that died mid-upload; pending/ and resumable/ have their own owners */
+    private void sweepStaging(Instant cutoff, long[] totals) throws IOException {
+        Path dir = staging.stagingDir();
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "upload-*.part")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                        long size = Files.size(file);
+                        if (Files.deleteIfExists(file)) {
+                            totals[0]++;
+                            totals[1] += size;
+                        }
+                    }
+                } catch (IOException ignored) {
+                    // next run
+                }
+            }
+        }
+    }
+
+    private Path blobPath(String hash) {
+        Path p = baseDir.resolve(ContentAddress.shardedKey(hash)).normalize();
+        if (!p.startsWith(baseDir)) {
+            throw new IllegalArgumentException("Invalid storage path");
+        }
+        return p;
+    }
+
+    /** Publishes a fully written temp file as a blob; a concurrent writer of the same content simply wins */
+    private void moveIntoPlace(Path tmp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            // refreshed so the reconciler's grace period covers the row about to reference it
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // staging dir configured on another filesystem: fall back to copy + delete
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (FileAlreadyExistsException ignored) {
+            // same bytes were stored in the meantime
+        }
     }
 
     @Override
     public java.util.Optional<String> downloadUrl(Upload upload) {
-        // local files are not served via remote URL
-        return java.util.Optional.empty();
+        // local files are not served via remote URL; rows still on Cloudinary (not migrated yet) are
+        String path = upload.getStoragePath();
+        return path != null && (path.startsWith("http://") || path.startsWith("https://"))
+                ? java.util.Optional.of(path)
+                : java.util.Optional.empty();
+    }
+
+    @Override
+    public boolean holds(Upload upload) {
+        String path = upload.getStoragePath();
+        return path != null && !path.contains("://"); // not a URL or s3:// location
     }
 
     @Override
@@ -80,15 +285,64 @@ public class LocalStorageService implements StorageService {
         return new FileSystemResource(upload.getStoragePath());
     }
 
+    /**
+     * Deletes the row; the blob is unlinked after commit, and only if no row references the same
+     * hash by then (see {@link #deleteAll}), so neither a rollback nor a concurrent upload of the same
+     * bytes is left pointing at a missing file.
+     */
     @Override
     public void delete(Upload upload) {
-        try {
-            Path path = Paths.get(upload.getStoragePath());
-            Files.deleteIfExists(path);
-            repo.delete(upload);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to delete local file", e);
+        deleteAll(List.of(upload));
+    }
+
+    /**
+     * One DELETE for the rows; the blobs no other row shares are unlinked on the background pool
+     * after commit. Each chunk re-checks its hashes first, in case the same bytes were uploaded again
+     * in the meantime. A file left behind by a failed unlink is picked up by the reconciler's sweep.
+     */
+    @Override
+    public void deleteAll(Collection<Upload> uploads) {
+        if (uploads.isEmpty()) return;
+        repo.deleteByIdIn(uploads.stream().map(Upload::getId).toList());
+        uploads.forEach(u -> metadata.evict(u.getId()));
+
+        Set<String> hashes = new HashSet<>();
+        uploads.forEach(u -> { if (u.getContentHash() != null) hashes.add(u.getContentHash()); });
+        Set<String> shared = hashes.isEmpty() ? Set.of() : new HashSet<>(repo.findContentHashesIn(hashes));
+        Map<Path, String> files = new LinkedHashMap<>();
+        for (Upload u : uploads) {
+            if (!holds(u) || shared.contains(u.getContentHash())) continue;
+            files.put(Paths.get(u.getStoragePath()).normalize(), u.getContentHash());
         }
+        if (files.isEmpty()) return;
+
+        List<Map.Entry<Path, String>> entries = new ArrayList<>(files.entrySet());
+        AfterCommit.run(() -> {
+            for (int i = 0; i < entries.size(); i += UNLINK_CHUNK) {
+                List<Map.Entry<Path, String>> chunk = entries.subList(i, Math.min(i + UNLINK_CHUNK, entries.size()));
+                unlinker.execute(() -> unlink(chunk));
+            }
+        });
+    }
+
+    private void unlink(List<Map.Entry<Path, String>> chunk) {
+        Set<String> hashes = new HashSet<>();
+        chunk.forEach(e -> { if (e.getValue() != null) hashes.add(e.getValue()); });
+        Set<String> relinked = hashes.isEmpty() ? Set.of() : new HashSet<>(repo.findContentHashesIn(hashes));
+        for (Map.Entry<Path, String> e : chunk) {
+            if (e.getValue() != null && relinked.contains(e.getValue())) continue;
+            try {
+                Files.deleteIfExists(e.getKey());
+                hot.evict(e.getKey());
+            } catch (IOException ex) {
+                log.warn("Could not delete {}: {}", e.getKey(), ex.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        unlinker.shutdown(); // queued unlinks finish; anything cut off is left for the sweep
     }
 }
 
@@ -0,0 +1,175 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.annotation.PreDestroy;
+import org.jcodec.common.DemuxerTrack;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Size;
+import org.jcodec.containers.mp4.demuxer.MP4Demuxer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intrinsic dimensions, duration and a BlurHash placeholder for images and mp4s, so galleries can
+ * lay out a grid and paint placeholders before any media bytes are fetched.
+ * <p>
+ * Extracted after an upload is stored, on a single low-priority thread: image dimensions come from
+ * the header (no decode), the placeholder from a ~32 px subsampled decode, video dimensions and
+ * duration from the mp4 boxes and the placeholder from its poster frame. Rows sharing a content hash
+ * copy an earlier row's values instead. On startup, older media without dimensions are backfilled.
+ * <p>
+ * Files that can't be read are recorded as 0x0 so they aren't retried on every start; a source that
+ * isn't available right now (remote fetch failed) is left for the next backfill.
+ */
+@Service
+public class MediaMetadataService {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaMetadataService.class);
+    private static final int PLACEHOLDER_WIDTH = 32;
+
+    private final UploadRepository uploads;
+    private final RemoteBlobCache remoteCache;
+    private final VideoPosterService posters;
+    private final int batchSize;
+    private final ThreadPoolExecutor pool;
+
+    public MediaMetadataService(UploadRepository uploads, RemoteBlobCache remoteCache, VideoPosterService posters,
+                                @Value("${media.metadata.batchSize:200}") int batchSize) {
+        this.uploads = uploads;
+        this.remoteCache = remoteCache;
+        this.posters = posters;
+        this.batchSize = batchSize;
+        // a full queue drops work: the next startup's backfill picks those uploads up
+        this.pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(10_000),
+                r -> {
+                    Thread t = new Thread(r, "media-metadata");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        pool.execute(() -> {
+            try {
+                long lastId = 0, done = 0;
+                List<Upload> page;
+                while (!(page = uploads.findMediaWithoutDimensions(lastId, PageRequest.of(0, batchSize))).isEmpty()) {
+                    for (Upload u : page) {
+                        if (u.isReady() && extract(u)) done++;
+                    }
+                    lastId = page.get(page.size() - 1).getId();
+                }
+                if (done > 0) log.info("Backfilled media metadata for {} uploads", done);
+            } catch (RuntimeException e) {
+                log.warn("Media metadata backfill failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /** After commit, so the update of the new row can't race its insert */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadStored(UploadStoredEvent event) {
+        Upload u = event.upload();
+        if (isMedia(u) && u.getWidth() == null) pool.execute(() -> extract(u));
+    }
+
+    private boolean extract(Upload u) {
+        Optional<Upload> known = u.getContentHash() == null ? Optional.empty()
+                : uploads.findFirstByContentHashAndWidthIsNotNull(u.getContentHash());
+        if (known.isPresent()) {
+            Upload k = known.get();
+            uploads.setMediaMetadata(u.getId(), k.getWidth(), k.getHeight(), k.getDurationMs(), k.getBlurhash());
+            return true;
+        }
+
+        String path = u.getStoragePath();
+        Optional<Path> source = path != null && path.contains("://")
+                ? remoteCache.fetch(u)
+                : ImageVariantService.localSource(u);
+        if (source.isEmpty()) return false;
+
+        Upload m = new Upload();
+        try {
+            if ("video/mp4".equals(u.getContentType())) readVideo(u, source.get(), m);
+            else readImage(source.get(), m);
+        } catch (IOException | RuntimeException e) {
+            log.info("No media metadata for upload {}: {}", u.getId(), e.getMessage());
+            m.setWidth(0);
+            m.setHeight(0);
+        }
+        uploads.setMediaMetadata(u.getId(), m.getWidth(), m.getHeight(), m.getDurationMs(), m.getBlurhash());
+        return true;
+    }
+
+    private void readImage(Path source, Upload m) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int w = reader.getWidth(0), h = reader.getHeight(0);
+                boolean swap = ImageOrientation.swapsAxes(ImageOrientation.read(source));
+                m.setWidth(swap ? h : w);
+                m.setHeight(swap ? w : h);
+            } finally {
+                reader.dispose();
+            }
+        }
+        m.setBlurhash(Blurhash.encode(ImageVariantService.decode(source, PLACEHOLDER_WIDTH)));
+    }
+
+    private void readVideo(Upload u, Path video, Upload m) throws IOException {
+        try (SeekableByteChannel ch = NIOUtils.readableChannel(video.toFile())) {
+            DemuxerTrack track = MP4Demuxer.createMP4Demuxer(ch).getVideoTrack();
+            DemuxerTrackMeta meta = track == null ? null : track.getMeta();
+            if (meta == null) throw new IOException("No video track");
+            Size size = meta.getVideoCodecMeta() != null ? meta.getVideoCodecMeta().getSize() : null;
+            if (size == null) throw new IOException("Unknown frame size");
+            boolean swap = meta.getOrientation() == DemuxerTrackMeta.Orientation.D_90
+                    || meta.getOrientation() == DemuxerTrackMeta.Orientation.D_270;
+            m.setWidth(swap ? size.getHeight() : size.getWidth());
+            m.setHeight(swap ? size.getWidth() : size.getHeight());
+            m.setDurationMs(Math.round(meta.getTotalDuration() * 1000));
+        }
+        // no poster (e.g. HEVC) only costs the placeholder
+        Optional<Path> poster = posters.poster(u, video);
+        if (poster.isPresent()) {
+            m.setBlurhash(Blurhash.encode(ImageVariantService.decode(poster.get(), PLACEHOLDER_WIDTH)));
+        }
+    }
+
+    private static boolean isMedia(Upload u) {
+        String ct = u.getContentType();
+        return ct != null && (ct.startsWith("image/") || ct.equals("video/mp4"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
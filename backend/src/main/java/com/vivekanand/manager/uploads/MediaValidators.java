@@ -0,0 +1,31 @@
+package com.vivekanand.manager.uploads;
+
+import java.time.Instant;
+
+/**
+ * HTTP validators for a stored upload (or one of its derived renditions), derived from metadata
+ * so that a revalidation can be answered with 304 without touching the file.
+ * <p>
+ * The fingerprint doubles as the {@code ?v=} token of versioned public URLs: it changes whenever
+ * the stored bytes do, so responses for a matching token can be cached as immutable.
+ */
+public record MediaValidators(String etag, long lastModified) {
+
+    /** Content hash prefix when known, otherwise size and upload time */
+    public static String fingerprint(Upload u) {
+        String hash = u.getContentHash();
+        if (hash != null && hash.length() >= 16) return hash.substring(0, 16);
+        long size = u.getSizeBytes() != null ? u.getSizeBytes() : 0;
+        long at = u.getUploadedAt() != null ? u.getUploadedAt().toEpochMilli() : 0;
+        return Long.toHexString(size) + "-" + Long.toHexString(at);
+    }
+
+    /** @param rendition null for the original, otherwise a stable name such as "w320.webp" or "poster" */
+    public static MediaValidators of(Upload u, String rendition) {
+        String tag = fingerprint(u) + (rendition != null ? "-" + rendition : "");
+        Instant at = u.getUploadedAt();
+        // HTTP dates have second precision; a sub-second value would never compare equal
+        long lastModified = at != null ? at.toEpochMilli() / 1000 * 1000 : -1;
+        return new MediaValidators("\"" + tag + "\"", lastModified);
+    }
+}
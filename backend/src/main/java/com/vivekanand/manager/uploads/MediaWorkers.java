@@ -0,0 +1,67 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool for background media work (thumbnails, posters, metadata). When the queue is full
+ * new work is dropped: everything submitted here can also be produced lazily on first request, so
+ * ingest latency never depends on this pool keeping up.
+ * <p>
+ * Deliberately not an {@link Executor} bean, which would replace Spring Boot's default
+ * {@code applicationTaskExecutor} used by {@code @Async}.
+ */
+@Component
+public class MediaWorkers {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaWorkers.class);
+
+    private final ThreadPoolExecutor pool;
+
+    public MediaWorkers(@Value("${media.workers:2}") int workers,
+                        @Value("${media.queueCapacity:500}") int queueCapacity) {
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "media-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queues a task; returns false (and drops it) when the queue is full */
+    public boolean submit(Runnable task) {
+        try {
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("Background media task failed: {}", e.getMessage());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Media queue full, dropping background task");
+            return false;
+        }
+    }
+
+    public int queued() {
+        return pool.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,195 @@
+package com.vivekanand.manager.uploads;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Set;
+
+/**
+ * "Faststart" for mp4: moves the {@code moov} box in front of {@code mdat} so a player can start
+ * after the first few hundred KB instead of fetching the tail of the file first (phones write
+ * {@code moov} last because it is only known once recording stops).
+ * <p>
+ * Only top-level box headers are read from disk; {@code moov} itself (sample tables, usually well
+ * under a few MB) is loaded and its {@code stco}/{@code co64} chunk offsets are shifted by its own
+ * size. Media data is copied through a fixed buffer. Anything unusual (fragmented or compressed
+ * movies, 32-bit offsets that would overflow, malformed boxes) leaves the file untouched.
+ */
+final class Mp4Faststart {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_MOOV_BYTES = 64L * 1024 * 1024;
+    private static final Set<String> CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "stbl");
+
+    private Mp4Faststart() {
+    }
+
+    /**
+     * Writes a faststart copy of {@code in} to {@code out}, feeding the written bytes to {@code md}.
+     * Returns false, without writing anything, when the file is already faststart or can't be
+     * rewritten safely.
+     */
+    static boolean rewrite(Path in, Path out, MessageDigest md) throws IOException {
+        try (FileChannel ch = FileChannel.open(in, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            long moovStart = -1, moovSize = 0, firstMdat = -1;
+
+            ByteBuffer header = ByteBuffer.allocate(16);
+            long pos = 0;
+            while (pos < size) {
+                if (!readFully(ch, header.clear().limit(8), pos)) return false;
+                long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+                String type = type(header, 4);
+                int headerLen = 8;
+                if (boxSize == 1) {
+                    if (!readFully(ch, header.clear().limit(8), pos + 8)) return false;
+                    boxSize = header.getLong(0);
+                    headerLen = 16;
+                } else if (boxSize == 0) {
+                    if (type.equals("moov")) return false; // "extends to EOF" stops being true once moved
+                    boxSize = size - pos;
+                }
+                if (boxSize < headerLen || boxSize > size - pos) return false;
+
+                switch (type) {
+                    case "moov" -> {
+                        moovStart = pos;
+                        moovSize = boxSize;
+                    }
+                    case "mdat" -> {
+                        if (firstMdat < 0) firstMdat = pos;
+                    }
+                    case "moof" -> {
+                        return false; // fragmented: offsets are relative to each fragment
+                    }
+                    default -> { }
+                }
+                pos += boxSize;
+            }
+            if (moovStart < 0 || firstMdat < 0 || moovStart < firstMdat || moovSize > MAX_MOOV_BYTES) {
+                return false;
+            }
+
+            ByteBuffer moov = ByteBuffer.allocate((int) moovSize);
+            if (!readFully(ch, moov, moovStart)) return false;
+            Shift shift = new Shift(firstMdat, moovStart, moovSize);
+            if (!patch(moov, 0, (int) moovSize, shift)) return false;
+
+            // [ftyp ... up to first mdat] [moov] [mdat ... up to old moov] [whatever followed moov]
+            try (OutputStream os = Files.newOutputStream(out)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                copy(ch, 0, firstMdat, os, md, buf);
+                md.update(moov.array());
+                os.write(moov.array());
+                copy(ch, firstMdat, moovStart - firstMdat, os, md, buf);
+                copy(ch, moovStart + moovSize, size - moovStart - moovSize, os, md, buf);
+            }
+            return true;
+        }
+    }
+
+    /** Walks the boxes in {@code buf[from, to)}, descending into containers and fixing chunk offset tables */
+    private static boolean patch(ByteBuffer buf, int from, int to, Shift shift) {
+        int pos = from;
+        if (from == 0) pos = headerLength(buf, 0); // skip the moov header itself
+        while (pos < to) {
+            if (to - pos < 8) return false;
+            long boxSize = buf.getInt(pos) & 0xFFFFFFFFL;
+            String type = type(buf, pos + 4);
+            int headerLen = 8;
+            if (boxSize == 1) {
+                if (to - pos < 16) return false;
+                boxSize = buf.getLong(pos + 8);
+                headerLen = 16;
+            } else if (boxSize == 0) {
+                boxSize = to - pos;
+            }
+            if (boxSize < headerLen || boxSize > to - pos) return false;
+            int end = pos + (int) boxSize;
+            int body = pos + headerLen;
+
+            switch (type) {
+                case "cmov" -> {
+                    return false; // compressed movie header: nothing we can patch
+                }
+                case "stco" -> {
+                    if (!patchTable(buf, body, end, 4, shift)) return false;
+                }
+                case "co64" -> {
+                    if (!patchTable(buf, body, end, 8, shift)) return false;
+                }
+                default -> {
+                    if (CONTAINERS.contains(type) && !patch(buf, body, end, shift)) return false;
+                }
+            }
+            pos = end;
+        }
+        return true;
+    }
+
+    private static boolean patchTable(ByteBuffer buf, int body, int end, int width, Shift shift) {
+        if (end - body < 8) return false;
+        long count = buf.getInt(body + 4) & 0xFFFFFFFFL; // after version + flags
+        if (count * width > end - body - 8) return false;
+        for (int i = 0, at = body + 8; i < count; i++, at += width) {
+            long offset = width == 4 ? buf.getInt(at) & 0xFFFFFFFFL : buf.getLong(at);
+            long moved = shift.apply(offset);
+            if (moved < 0) return false;
+            if (width == 4) {
+                if (moved > 0xFFFFFFFFL) return false; // would need an stco -> co64 upgrade
+                buf.putInt(at, (int) moved);
+            } else {
+                buf.putLong(at, moved);
+            }
+        }
+        return true;
+    }
+
+    private static int headerLength(ByteBuffer buf, int pos) {
+        return (buf.getInt(pos) & 0xFFFFFFFFL) == 1 ? 16 : 8;
+    }
+
+    private static String type(ByteBuffer buf, int at) {
+        byte[] t = new byte[4];
+        buf.get(at, t);
+        return new String(t, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos);
+            if (n < 0) return false;
+            pos += n;
+        }
+        return true;
+    }
+
+    private static void copy(FileChannel ch, long pos, long count, OutputStream os,
+                             MessageDigest md, byte[] buf) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        while (count > 0) {
+            bb.clear().limit((int) Math.min(buf.length, count));
+            int n = ch.read(bb, pos);
+            if (n <= 0) throw new IOException("File truncated while rewriting");
+            md.update(buf, 0, n);
+            os.write(buf, 0, n);
+            pos += n;
+            count -= n;
+        }
+    }
+
+    /** Offsets into the media data between the first mdat and the old moov move up by moov's size */
+    private record Shift(long firstMdat, long moovStart, long moovSize) {
+        long apply(long offset) {
+            if (offset < firstMdat || offset >= moovStart + moovSize) return offset;
+            if (offset >= moovStart) return -1; // points into moov itself: not a real chunk
+            return offset + moovSize;
+        }
+    }
+}
@@ -1,17 +1,15 @@
 package com.vivekanand.manager.uploads;
 
 import com.cloudinary.Cloudinary;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.InputStream;
+import java.io.IOException;
 import java.net.URI;
-import java.net.URL;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
@@ -19,21 +17,44 @@ import java.util.Optional;
 @RestController
 @RequestMapping("/api/public/uploads")
 public class PublicImageController {
-    private final UploadRepository repo;
+    /**
+     * Redirects are only as stable as the URL they point at, which can change under a fingerprint
+     * (a provider migration, a new transformation), so never cached as immutable, even on a
+     * versioned URL; {@code immutable} is for bytes this app serves itself.
+     */
+    private static final String REDIRECT_CACHE_CONTROL = "public, max-age=300";
+
+    private final UploadMetadataCache uploads;
+    private final LocalMediaStreamer streamer;
+    private final ImageVariantService variants;
+    private final VideoPosterService posters;
+    private final RemoteBlobCache remoteCache;
+    @Autowired(required = false)
+    private Cloudinary cloudinary; // Optional; used to generate video poster and variant URLs
     @Autowired(required = false)
-    private Cloudinary cloudinary; // Optional; used to generate video poster URLs
-    public PublicImageController(UploadRepository r){ this.repo = r; }
+    private S3StorageService s3; // Optional; presigns object-store URLs
+    public PublicImageController(UploadMetadataCache c, LocalMediaStreamer s, ImageVariantService v,
+                                 VideoPosterService p, RemoteBlobCache r){
+        this.uploads = c; this.streamer = s; this.variants = v; this.posters = p; this.remoteCache = r;
+    }
 
+    /**
+     * Local files are written directly to the response by {@link LocalMediaStreamer} (Range/If-Range,
+     * sendfile); in that case the method returns null because the response is already handled.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<Resource> image(@PathVariable Long id) {
-        Upload u = repo.findById(id).orElseThrow();
+    public ResponseEntity<?> image(@PathVariable Long id, @RequestParam(required = false) String v,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        CachedUpload c = uploads.get(id).orElseThrow();
+        Upload u = c.upload();
 
-        if (!isAllowedForPublic(u)) {
+        if (!c.publicAllowed()) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
         final String path = u.getStoragePath();
-        final String ct   = normalizeContentType(u.getContentType(), u.getOriginalFilename(), path);
+        final String ct   = c.contentType();
 
         // Remote (Cloudinary/CDN): redirect for performance & range support
         if (path != null && (path.startsWith("http://") || path.startsWith("https://"))) {
@@ -43,44 +64,41 @@ public class PublicImageController {
             return ResponseEntity.status(HttpStatus.FOUND)
                     .location(URI.create(path))
                     .header("X-Content-Type-Options", "nosniff")
-                    .header(HttpHeaders.CACHE_CONTROL, "public, max-age=300")
+                    .header(HttpHeaders.CACHE_CONTROL, REDIRECT_CACHE_CONTROL)
                     .build();
         }
 
-        // Local file
-        if (path == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        if (path != null && path.startsWith("s3://")) {
+            return redirectToObject(u);
         }
 
-        Path p = Paths.get(path).normalize();
-        if (!Files.exists(p)) {
+        // Local file
+        if (path == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
 
-        FileSystemResource fs = new FileSystemResource(p.toFile());
-
-        return ResponseEntity.ok()
-                .contentType(safeMediaType(ct))
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDispositionInline(u.getOriginalFilename()))
-                .header("X-Content-Type-Options", "nosniff")
-                .header(HttpHeaders.CACHE_CONTROL, "public, max-age=86400")
-                .body(fs);
+        return streamLocal(request, response, Paths.get(path).normalize(), safeMediaType(ct),
+                contentDispositionInline(u.getOriginalFilename()), cacheControl(u, v, "public, max-age=86400"),
+                MediaValidators.of(u, null));
     }
 
     /**
      * Poster/thumbnail endpoint:
      * - For images: returns/redirects the image itself (safe to use for previews).
      * - For Cloudinary videos: redirects to a JPG poster (frame at ~1s).
-     * - For local videos: poster not available → 404.
+     * - For local videos: JPG frame extracted by {@link VideoPosterService}; 404 (not cached) while it's
+     *   still being generated or when the stream can't be decoded.
      */
     @GetMapping("/{id}/poster")
-    public ResponseEntity<?> poster(@PathVariable Long id) {
-        Upload u = repo.findById(id).orElseThrow();
+    public ResponseEntity<?> poster(@PathVariable Long id, @RequestParam(required = false) String v,
+                                    HttpServletRequest request,
+                                    HttpServletResponse response) throws IOException {
+        CachedUpload c = uploads.get(id).orElseThrow();
+        Upload u = c.upload();
 
         final String path = u.getStoragePath();
-        final String ct   = Optional.ofNullable(u.getContentType()).orElse("").toLowerCase();
-        final boolean isImage = ct.startsWith("image/") || hasImageExt(u.getOriginalFilename()) || hasImageExt(path);
-        final boolean isVideoMp4 = ct.equals("video/mp4") || endsWith(path, ".mp4") || endsWith(u.getOriginalFilename(), ".mp4");
+        final boolean isImage = c.image();
+        final boolean isVideoMp4 = c.videoMp4();
 
         // Images: redirect/serve the original image as poster
         if (isImage) {
@@ -91,22 +109,15 @@ public class PublicImageController {
                 return ResponseEntity.status(HttpStatus.FOUND)
                         .location(URI.create(path))
                         .header("X-Content-Type-Options", "nosniff")
-                        .header(HttpHeaders.CACHE_CONTROL, "public, max-age=300")
+                        .header(HttpHeaders.CACHE_CONTROL, REDIRECT_CACHE_CONTROL)
                         .build();
             }
+            if (path != null && path.startsWith("s3://")) return redirectToObject(u);
             if (path == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 
-            Path p = Paths.get(path).normalize();
-            if (!Files.exists(p)) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-
-            FileSystemResource fs = new FileSystemResource(p.toFile());
-            String normalizedCt = normalizeContentType(ct, u.getOriginalFilename(), path);
-            return ResponseEntity.ok()
-                    .contentType(safeMediaType(normalizedCt))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDispositionInline(u.getOriginalFilename()))
-                    .header("X-Content-Type-Options", "nosniff")
-                    .header(HttpHeaders.CACHE_CONTROL, "public, max-age=86400")
-                    .body(fs);
+            return streamLocal(request, response, Paths.get(path).normalize(), safeMediaType(c.contentType()),
+                    contentDispositionInline(u.getOriginalFilename()), cacheControl(u, v, "public, max-age=86400"),
+                    MediaValidators.of(u, null));
         }
 
         // Videos (mp4): try to generate Cloudinary poster (jpg)
@@ -129,18 +140,17 @@ public class PublicImageController {
                     return ResponseEntity.status(HttpStatus.FOUND)
                             .location(URI.create(posterUrl))
                             .header("X-Content-Type-Options", "nosniff")
-                            .header(HttpHeaders.CACHE_CONTROL, "public, max-age=300")
+                            .header(HttpHeaders.CACHE_CONTROL, REDIRECT_CACHE_CONTROL)
                             .build();
                 }
                 // If we can't build via SDK, best-effort fallback: redirect to the original video (browser may show default poster)
                 return ResponseEntity.status(HttpStatus.FOUND)
                         .location(URI.create(path))
                         .header("X-Content-Type-Options", "nosniff")
-                        .header(HttpHeaders.CACHE_CONTROL, "public, max-age=300")
+                        .header(HttpHeaders.CACHE_CONTROL, REDIRECT_CACHE_CONTROL)
                         .build();
             } else {
-                // Local video: poster generation not implemented → 404
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                return streamPoster(u, v, request, response, true);
             }
         }
 
@@ -148,40 +158,158 @@ public class PublicImageController {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
     }
 
-    /** Accept images and mp4 videos; fall back to extension if contentType is missing */
-    private boolean isAllowedForPublic(Upload u) {
-        String ct = Optional.ofNullable(u.getContentType()).orElse("").toLowerCase();
-        if (ct.startsWith("image/") || ct.equals("video/mp4")) return true;
+    /**
+     * Poster of a local mp4. The disk cache may evict it between lookup and open; it is then looked
+     * up (i.e. rendered) once more, and a second miss is a 404 like any other missing file.
+     */
+    private ResponseEntity<?> streamPoster(Upload u, String v, HttpServletRequest request, HttpServletResponse response,
+                                           boolean retry) throws IOException {
+        Optional<Path> poster = ImageVariantService.localSource(u).flatMap(video -> posters.poster(u, video));
+        if (poster.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                    .build();
+        }
+        // the poster of a content-addressed video never changes
+        String cacheControl = cacheControl(u, v, "public, max-age=2592000");
+        if (!retry) {
+            return streamLocal(request, response, poster.get(), MediaType.IMAGE_JPEG,
+                    contentDispositionInline("poster.jpg"), cacheControl, MediaValidators.of(u, "poster"));
+        }
+        try {
+            streamer.stream(request, response, poster.get(), MediaType.IMAGE_JPEG,
+                    contentDispositionInline("poster.jpg"), cacheControl, MediaValidators.of(u, "poster"));
+            return null;
+        } catch (NoSuchFileException e) {
+            response.reset();
+            return streamPoster(u, v, request, response, false);
+        }
+    }
+
+    /**
+     * Resized variant for grids and previews, {@code w} must be one of the configured widths.
+     * - Local images: rendered/cached by {@link ImageVariantService}; webp when requested or accepted and available.
+     * - Local mp4s: same, resized from the video's poster frame.
+     * - Cloudinary: redirects to the equivalent on-the-fly transformation URL.
+     * - S3: rendered like local files from the {@link RemoteBlobCache} copy of the original.
+     * - Anything else: 404.
+     */
+    @GetMapping("/{id}/variant/{w}")
+    public ResponseEntity<?> variant(@PathVariable Long id, @PathVariable int w,
+                                     @RequestParam(required = false) String format,
+                                     @RequestParam(required = false) String v,
+                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CachedUpload c = uploads.get(id).orElseThrow();
+        Upload u = c.upload();
+        if (!c.publicAllowed()) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        if (!variants.isAllowedWidth(w)) throw new IllegalArgumentException("Unsupported variant width");
+        String fmt = variants.negotiateFormat(format, accept);
 
-        String name = Optional.ofNullable(u.getOriginalFilename()).orElse("").toLowerCase();
-        String path = Optional.ofNullable(u.getStoragePath()).orElse("").toLowerCase();
+        final String path = u.getStoragePath();
+        String ct = c.contentType();
 
-        if (hasImageExt(name) || hasImageExt(path)) return true;
-        if (endsWith(name, ".mp4") || endsWith(path, ".mp4")) return true;
+        if (path != null && (path.startsWith("http://") || path.startsWith("https://"))) {
+            if (!isAllowedRemoteHost(path)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            String publicId = u.getProviderId();
+            if (cloudinary == null || publicId == null || publicId.isBlank()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            boolean video = ct.startsWith("video/");
+            var t = new com.cloudinary.Transformation().width(w).crop("limit");
+            if (video) t = t.rawTransformation("so_1"); // poster frame ~1s, like /poster
+            else t = t.fetchFormat("auto");
+            String url = cloudinary.url()
+                    .resourceType(video ? "video" : "image")
+                    .secure(true)
+                    .transformation(t)
+                    .format(video ? "jpg" : null)
+                    .generate(publicId);
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(url))
+                    .header("X-Content-Type-Options", "nosniff")
+                    .header(HttpHeaders.CACHE_CONTROL, REDIRECT_CACHE_CONTROL)
+                    .build();
+        }
 
-        return false;
-    }
+        boolean objectStore = path != null && path.startsWith("s3://");
+        Optional<Path> original = objectStore ? remoteCache.fetch(u) : ImageVariantService.localSource(u);
+        if (objectStore && original.isEmpty()) {
+            // couldn't pull the original into the cache: it is still better than a broken tile
+            return ct.startsWith("image/") ? redirectToObject(u) : ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
 
-    /** Normalize content type using filename/path if missing */
-    private String normalizeContentType(String ct, String name, String path) {
-        String lower = Optional.ofNullable(ct).orElse("").toLowerCase();
-        if (!lower.isBlank()) return lower;
+        Optional<Path> source;
+        if (ct.startsWith("image/")) {
+            source = original;
+        } else if (ct.equals("video/mp4")) {
+            source = original.flatMap(video -> posters.poster(u, video));
+            ct = "image/jpeg";
+        } else {
+            source = Optional.empty();
+        }
+        if (source.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
 
-        String target = (Optional.ofNullable(name).orElse("") + " " + Optional.ofNullable(path).orElse("")).toLowerCase();
-        if (target.endsWith(".png")) return "image/png";
-        if (target.endsWith(".webp")) return "image/webp";
-        if (target.endsWith(".jpg") || target.endsWith(".jpeg")) return "image/jpeg";
-        if (target.endsWith(".mp4")) return "video/mp4";
+        Path file;
+        MediaType type;
+        MediaValidators validators;
+        try {
+            file = variants.variant(u, source.get(), w, fmt);
+            type = MediaType.parseMediaType(ImageVariantService.mediaType(fmt));
+            validators = MediaValidators.of(u, "w" + w + "." + fmt);
+        } catch (IOException e) {
+            // undecodable image: the original is still better than a broken tile
+            file = source.get();
+            type = safeMediaType(ct);
+            validators = MediaValidators.of(u, null);
+        }
+        if (format == null || format.isBlank()) response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return streamLocal(request, response, file, type,
+                contentDispositionInline(u.getOriginalFilename()), cacheControl(u, v, "public, max-age=86400"),
+                validators);
+    }
 
-        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    /**
+     * No existence check up front: hot files are served from memory and revalidations are answered
+     * from the validators. A missing file fails before the body is written; the caching headers
+     * already set are dropped so the 404 isn't cached for a year.
+     */
+    private ResponseEntity<?> streamLocal(HttpServletRequest request, HttpServletResponse response, Path file,
+                                          MediaType type, String disposition, String cacheControl,
+                                          MediaValidators validators) throws IOException {
+        try {
+            streamer.stream(request, response, file, type, disposition, cacheControl, validators);
+            return null;
+        } catch (NoSuchFileException e) {
+            response.reset();
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
     }
 
-    private boolean hasImageExt(String s) {
-        return endsWith(s, ".jpg") || endsWith(s, ".jpeg") || endsWith(s, ".png") || endsWith(s, ".webp");
+    /**
+     * S3 rows: redirect to a presigned URL, so the store serves the bytes (and Range requests)
+     * directly. Never cached as immutable, since the signature expires.
+     */
+    private ResponseEntity<?> redirectToObject(Upload u) {
+        if (s3 == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create(s3.presignedUrl(u, contentDispositionInline(u.getOriginalFilename()))))
+                .header("X-Content-Type-Options", "nosniff")
+                .header(HttpHeaders.CACHE_CONTROL, "private, max-age=300")
+                .build();
     }
 
-    private boolean endsWith(String s, String suffix) {
-        return Optional.ofNullable(s).orElse("").toLowerCase().endsWith(suffix);
+    /** {@code ?v=} matching the current fingerprint: that URL's bytes can never change */
+    private String cacheControl(Upload u, String version, String unversioned) {
+        return version != null && version.equals(MediaValidators.fingerprint(u))
+                ? "public, max-age=31536000, immutable"
+                : unversioned;
     }
 
     private MediaType safeMediaType(String ct) {
@@ -0,0 +1,212 @@
+package com.vivekanand.manager.uploads;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-through disk tier for blobs held by a remote provider (Cloudinary, S3), so repeated
+ * downloads and server-side image work don't go back to the origin every time.
+ * <p>
+ * Files live in an LRU {@link DiskCache} bounded by {@code media.remoteCacheMb}. Like
+ * {@link HotMediaCache}, a blob is only admitted after {@code media.remoteAdmitAfter} recent misses,
+ * so one-off downloads don't flush what is actually reused. Concurrent misses for the same blob
+ * share one fetch, and a fetched blob is checked against the row's SHA-256 and size before it is
+ * committed; content-addressed entries are therefore immutable and never revalidated.
+ * <p>
+ * Metrics: {@code uploads.remoteCache.requests} (result=hit|miss), {@code .bytesSaved},
+ * {@code .checksumFailures}, {@code .hitRatio} and {@code .size}.
+ */
+@Component
+public class RemoteBlobCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteBlobCache.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DiskCache cache;
+    private final Cache<String, AtomicInteger> misses;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final StorageService storage;
+    private final HttpClient http;
+    private final MediaWorkers workers;
+    private final long maxEntryBytes;
+    private final int admitAfter;
+    private final Counter hitCount;
+    private final Counter missCount;
+    private final Counter bytesSaved;
+    private final Counter checksumFailures;
+
+    public RemoteBlobCache(StorageService storage, HttpClient mediaHttpClient, MediaWorkers workers, MeterRegistry meters,
+                           @Value("${media.cacheDir:${storage.uploadDir}/.cache}") String cacheDir,
+                           @Value("${media.remoteCacheMb:2048}") long cacheMb,
+                           @Value("${media.remoteMaxEntryMb:64}") long maxEntryMb,
+                           @Value("${media.remoteAdmitAfter:2}") int admitAfter) {
+        this.storage = storage;
+        this.http = mediaHttpClient;
+        this.workers = workers;
+        this.cache = new DiskCache(Paths.get(cacheDir, "remote"), cacheMb * 1024 * 1024);
+        this.maxEntryBytes = maxEntryMb * 1024 * 1024;
+        this.admitAfter = admitAfter;
+        this.misses = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMinutes(30))
+                .build();
+        this.hitCount = meters.counter("uploads.remoteCache.requests", "result", "hit");
+        this.missCount = meters.counter("uploads.remoteCache.requests", "result", "miss");
+        this.bytesSaved = meters.counter("uploads.remoteCache.bytesSaved");
+        this.checksumFailures = meters.counter("uploads.remoteCache.checksumFailures");
+        Gauge.builder("uploads.remoteCache.hitRatio", this, RemoteBlobCache::hitRatio).register(meters);
+        Gauge.builder("uploads.remoteCache.size", cache, DiskCache::sizeBytes).baseUnit("bytes").register(meters);
+    }
+
+    /**
+     * The cached copy of a remote upload, or empty. A miss counts towards admission and, once the
+     * blob qualifies, fills the cache in the background; the caller serves this request from the
+     * origin.
+     */
+    public Optional<Path> cached(Upload u) {
+        if (!cacheable(u)) return Optional.empty();
+        String key = key(u);
+        Optional<Path> hit = lookup(u, key);
+        if (hit.isPresent()) return hit;
+
+        AtomicInteger count = misses.get(key, k -> new AtomicInteger());
+        if (count.incrementAndGet() == admitAfter) {
+            workers.submit(() -> {
+                try {
+                    fill(u, key);
+                } catch (IOException e) {
+                    log.debug("Remote cache fill for upload {} failed: {}", u.getId(), e.getMessage());
+                }
+            });
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Read-through for server-side processing: the local copy, fetching it now (shared with any
+     * concurrent caller) on a miss. Empty for uploads that aren't remote, are too large, or can't
+     * be fetched intact.
+     */
+    public Optional<Path> fetch(Upload u) {
+        if (!cacheable(u)) return Optional.empty();
+        String key = key(u);
+        Optional<Path> hit = lookup(u, key);
+        if (hit.isPresent()) return hit;
+        try {
+            return Optional.of(fill(u, key));
+        } catch (IOException e) {
+            log.warn("Could not fetch remote upload {}: {}", u.getId(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public double hitRatio() {
+        double total = hitCount.count() + missCount.count();
+        return total == 0 ? 0 : hitCount.count() / total;
+    }
+
+    private Optional<Path> lookup(Upload u, String key) {
+        Optional<Path> hit = cache.get(key);
+        if (hit.isPresent()) {
+            hitCount.increment();
+            if (u.getSizeBytes() != null) bytesSaved.increment(u.getSizeBytes());
+        } else {
+            missCount.increment();
+        }
+        return hit;
+    }
+
+    private Path fill(Upload u, String key) throws IOException {
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new IOException("Remote fetch failed", e.getCause());
+            }
+        }
+        try {
+            Optional<Path> raced = cache.get(key); // filled while we were checking
+            Path p = raced.isPresent() ? raced.get() : cache.put(key, out -> download(u, out));
+            misses.invalidate(key);
+            mine.complete(p);
+            return p;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Streams the origin's bytes into the cache file; throwing discards the partial file */
+    private void download(Upload u, OutputStream out) throws IOException {
+        String url = storage.downloadUrl(u).orElseThrow(() -> new IOException("No remote URL"));
+        HttpResponse<InputStream> response;
+        try {
+            response = http.send(HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 200) throw new IOException("Origin returned HTTP " + response.statusCode());
+            MessageDigest md = ContentAddress.newDigest();
+            byte[] buf = new byte[BUFFER_SIZE];
+            long size = 0;
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                size += n;
+                if (size > maxEntryBytes) throw new IOException("Too large to cache");
+                md.update(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+            boolean sizeOk = u.getSizeBytes() == null || u.getSizeBytes() == size;
+            boolean hashOk = u.getContentHash() == null || u.getContentHash().equals(ContentAddress.hex(md.digest()));
+            if (!sizeOk || !hashOk) {
+                checksumFailures.increment();
+                throw new IOException("Fetched bytes don't match the upload's " + (hashOk ? "size" : "checksum"));
+            }
+        }
+    }
+
+    private boolean cacheable(Upload u) {
+        String path = u.getStoragePath();
+        return path != null && path.contains("://")
+                && (u.getSizeBytes() == null || u.getSizeBytes() <= maxEntryBytes);
+    }
+
+    /** Content-addressed where possible, so deduplicated uploads share one cached copy */
+    private static String key(Upload u) {
+        return u.getContentHash() != null
+                ? "sha256/" + ContentAddress.shardedKey(u.getContentHash())
+                : "id/" + u.getId();
+    }
+}
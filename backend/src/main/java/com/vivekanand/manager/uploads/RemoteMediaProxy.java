@@ -0,0 +1,363 @@
+package com.vivekanand.manager.uploads;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams a remote (provider-hosted) upload through this server for authenticated downloads.
+ * <p>
+ * Uses the shared pooled {@link HttpClient} asynchronously and answers with a {@link DeferredResult},
+ * so no Tomcat thread waits for the origin's headers. The body is then copied through a fixed
+ * buffer on this proxy's own pool, so the client's read speed paces the origin read. Range
+ * and conditional headers pass through in both directions. Each origin host gets a bounded number
+ * of concurrent transfers and the pool has no queue; beyond either, callers get 503 instead of
+ * waiting with an open origin response.
+ * <p>
+ * Nothing waits unboundedly: the response headers, every body chunk and the whole exchange have
+ * their own timeout, and the host permit is returned when the async request ends for any reason
+ * (completion, timeout, error, client gone), even if the body never starts streaming.
+ */
+@Component
+public class RemoteMediaProxy {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteMediaProxy.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final List<String> REQUEST_HEADERS = List.of(
+            HttpHeaders.RANGE, HttpHeaders.IF_RANGE, HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE);
+    private static final List<String> RESPONSE_HEADERS = List.of(
+            HttpHeaders.CONTENT_LENGTH, HttpHeaders.CONTENT_RANGE, HttpHeaders.ACCEPT_RANGES,
+            HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED);
+
+    private final HttpClient client;
+    private final MeterRegistry meters;
+    private final int maxPerHost;
+    private final Duration responseTimeout;
+    private final Duration idleTimeout;
+    private final Duration transferTimeout;
+    private final long acquireTimeoutMs;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor transfers;
+
+    public RemoteMediaProxy(HttpClient mediaHttpClient, MeterRegistry meters,
+                            @Value("${media.proxy.maxPerHost:16}") int maxPerHost,
+                            @Value("${media.proxy.threads:32}") int threads,
+                            @Value("${media.proxy.responseTimeoutSeconds:20}") long responseTimeoutSeconds,
+                            @Value("${media.proxy.idleTimeoutSeconds:30}") long idleTimeoutSeconds,
+                            @Value("${media.proxy.transferTimeoutMinutes:30}") long transferTimeoutMinutes,
+                            @Value("${media.proxy.acquireTimeoutMs:250}") long acquireTimeoutMs) {
+        this.client = mediaHttpClient;
+        this.meters = meters;
+        this.maxPerHost = maxPerHost;
+        this.responseTimeout = Duration.ofSeconds(responseTimeoutSeconds);
+        this.idleTimeout = Duration.ofSeconds(idleTimeoutSeconds);
+        this.transferTimeout = Duration.ofMinutes(transferTimeoutMinutes);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        AtomicInteger seq = new AtomicInteger();
+        this.transfers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "media-proxy-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.transfers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A result for the controller to return. Usually pending; already set when the answer is known
+     * right away (503 when busy). Set to null once the body has been written to {@code response}.
+     */
+    public DeferredResult<ResponseEntity<?>> proxy(String url, HttpServletRequest request, HttpServletResponse response,
+                                                   MediaType contentType, String contentDisposition) {
+        URI uri = URI.create(url);
+        String host = uri.getHost();
+        Semaphore hostPermits = permits.computeIfAbsent(host, h -> new Semaphore(maxPerHost));
+        try {
+            if (!hostPermits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return answered(busy(host));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return answered(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+
+        HttpRequest.Builder rb = HttpRequest.newBuilder(uri).timeout(responseTimeout).GET();
+        for (String h : REQUEST_HEADERS) {
+            String v = request.getHeader(h);
+            if (v != null) rb.header(h, v);
+        }
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(transferTimeout.toMillis());
+        Transfer transfer = new Transfer(host, result, response, contentType, contentDisposition, new Release(hostPermits));
+        // the body may never run (client gone while waiting for the origin, timeout, error)
+        result.onCompletion(transfer::finish);
+        result.onTimeout(transfer::finish);
+        result.onError(e -> transfer.finish());
+        transfer.start(rb.build());
+        return result;
+    }
+
+    /** For controllers that proxy on some paths: a response known without waiting */
+    public static DeferredResult<ResponseEntity<?>> answered(ResponseEntity<?> response) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transfers.shutdownNow();
+    }
+
+    private ResponseEntity<?> busy(String host) {
+        meters.counter("uploads.proxy.rejected", "host", host).increment();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Too many concurrent downloads, retry shortly");
+    }
+
+    /**
+     * One proxied exchange: sends the origin request, answers the client once the origin's headers
+     * are in, and cleans up (origin connection, host permit) exactly once however it ends.
+     */
+    private final class Transfer {
+        private final String host;
+        private final DeferredResult<ResponseEntity<?>> result;
+        private final HttpServletResponse response;
+        private final MediaType contentType;
+        private final String contentDisposition;
+        private final Release release;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final Timer.Sample sample;
+        private volatile CompletableFuture<HttpResponse<TimedBody>> pending;
+
+        Transfer(String host, DeferredResult<ResponseEntity<?>> result, HttpServletResponse response,
+                 MediaType contentType, String contentDisposition, Release release) {
+            this.host = host;
+            this.result = result;
+            this.response = response;
+            this.contentType = contentType;
+            this.contentDisposition = contentDisposition;
+            this.release = release;
+            this.sample = Timer.start(meters);
+        }
+
+        void start(HttpRequest request) {
+            pending = client.sendAsync(request, info -> new TimedBody());
+            pending.whenComplete((upstream, error) -> {
+                if (finished.get()) {
+                    if (upstream != null) upstream.body().cancel();
+                    return;
+                }
+                try {
+                    transfers.execute(() -> respond(upstream, error));
+                } catch (RejectedExecutionException e) {
+                    if (upstream != null) upstream.body().cancel();
+                    release.run(); // before answering, so the client's retry can get it
+                    result.setResult(busy(host));
+                }
+            });
+            if (finished.get()) pending.cancel(true); // ended before the future was set
+        }
+
+        private void respond(HttpResponse<TimedBody> upstream, Throwable error) {
+            if (error != null) {
+                sample.stop(latency(host, "error"));
+                log.warn("Remote fetch failed for {}: {}", host, error.getMessage());
+                result.setResult(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Failed to fetch remote resource"));
+                return;
+            }
+            TimedBody in = upstream.body();
+            int status = upstream.statusCode();
+            sample.stop(latency(host, String.valueOf(status)));
+            if (finished.get()) { // client gone while this was handed over
+                in.cancel();
+                return;
+            }
+            if (status != 200 && status != 206 && status != 304 && status != 416) {
+                in.cancel();
+                result.setResult(ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Failed to fetch remote resource"));
+                return;
+            }
+
+            response.setStatus(status);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+            response.setHeader("X-Content-Type-Options", "nosniff");
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=0");
+            for (String h : RESPONSE_HEADERS) {
+                upstream.headers().firstValue(h).ifPresent(v -> response.setHeader(h, v));
+            }
+            if (status == 304 || status == 416) {
+                in.cancel();
+                result.setResult(null);
+                return;
+            }
+            response.setContentType(contentType.toString());
+
+            Counter bytes = meters.counter("uploads.proxy.bytes", "host", host);
+            try {
+                OutputStream out = response.getOutputStream();
+                byte[] buf = new byte[BUFFER_SIZE];
+                List<ByteBuffer> chunk;
+                while ((chunk = in.next(idleTimeout)) != null) {
+                    for (ByteBuffer b : chunk) bytes.increment(copy(b, out, buf));
+                }
+                out.flush();
+                result.setResult(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.setErrorResult(new IOException("Interrupted while reading from " + host, e));
+            } catch (IOException e) {
+                // the response is committed: failing the request makes the container drop the
+                // connection, so the client sees a truncated transfer rather than a short file
+                result.setErrorResult(e);
+            } finally {
+                in.cancel();
+            }
+        }
+
+        void finish() {
+            if (!finished.compareAndSet(false, true)) return;
+            CompletableFuture<HttpResponse<TimedBody>> p = pending;
+            if (p != null) {
+                // abort a request still waiting for headers; an arrived body is cancelled in place
+                if (!p.cancel(true)) p.thenAccept(r -> r.body().cancel());
+            }
+            release.run();
+        }
+    }
+
+    private static int copy(ByteBuffer b, OutputStream out, byte[] buf) throws IOException {
+        int total = b.remaining();
+        if (b.hasArray()) {
+            out.write(b.array(), b.arrayOffset() + b.position(), total);
+            return total;
+        }
+        while (b.hasRemaining()) {
+            int n = Math.min(buf.length, b.remaining());
+            b.get(buf, 0, n);
+            out.write(buf, 0, n);
+        }
+        return total;
+    }
+
+    private Timer latency(String host, String outcome) {
+        return Timer.builder("uploads.proxy.latency")
+                .description("Time to upstream response headers")
+                .tags("host", host, "status", outcome)
+                .register(meters);
+    }
+
+    /**
+     * Response body handed over one chunk at a time with a timeout per chunk; unlike
+     * {@code BodyHandlers.ofInputStream()}, a stalled origin can't block the reader forever.
+     * Cancelling discards the connection and wakes up a waiting reader.
+     */
+    private static final class TimedBody implements HttpResponse.BodySubscriber<TimedBody> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            if (cancelled.get()) s.cancel();
+            else s.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            queue.add(t);
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(END);
+        }
+
+        @Override
+        public CompletionStage<TimedBody> getBody() {
+            return CompletableFuture.completedStage(this);
+        }
+
+        /** The next chunk, or null at the end of the body */
+        @SuppressWarnings("unchecked")
+        List<ByteBuffer> next(Duration timeout) throws IOException, InterruptedException {
+            Object o = queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (o == null) {
+                cancel();
+                throw new IOException("No data from origin for " + timeout.toSeconds() + "s");
+            }
+            if (o == END) return null;
+            if (o instanceof Throwable t) throw new IOException("Origin read failed", t);
+            subscription.request(1);
+            return (List<ByteBuffer>) o;
+        }
+
+        void cancel() {
+            if (!cancelled.compareAndSet(false, true)) return;
+            Flow.Subscription s = subscription;
+            if (s != null) s.cancel();
+            queue.add(new IOException("Transfer cancelled"));
+        }
+    }
+
+    /** Returns the host permit exactly once, whichever path finishes the exchange */
+    private static final class Release implements Runnable {
+        private final Semaphore semaphore;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Release(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void run() {
+            if (done.compareAndSet(false, true)) semaphore.release();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.uploads.dto.ResumableUploadCreateRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Resumable upload protocol (modelled on tus):
+ * <pre>
+ * POST   /api/uploads/resumable            {filename, contentType, length} -> 201 + Location
+ * PATCH  /api/uploads/resumable/{id}       Upload-Offset header, raw bytes -> 204 + Upload-Offset
+ * HEAD   /api/uploads/resumable/{id}       -> Upload-Offset / Upload-Length (resume point)
+ * POST   /api/uploads/resumable/{id}/finish -> Upload
+ * DELETE /api/uploads/resumable/{id}       -> 204
+ * </pre>
+ */
+@RestController
+@RequestMapping("/api/uploads/resumable")
+@PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+public class ResumableUploadController {
+
+    private final ResumableUploadService svc;
+
+    public ResumableUploadController(ResumableUploadService svc) {
+        this.svc = svc;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSession> create(@Valid @RequestBody ResumableUploadCreateRequest req, Authentication auth) {
+        UploadSession s = svc.create(req, auth.getName());
+        return ResponseEntity.created(URI.create("/api/uploads/resumable/" + s.getId()))
+                .header("Upload-Offset", "0")
+                .header("Upload-Length", String.valueOf(s.getTotalBytes()))
+                .body(s);
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> append(@PathVariable String id, @RequestHeader("Upload-Offset") long offset,
+                                       HttpServletRequest request, Authentication auth) throws IOException {
+        UploadSession s = svc.append(id, offset, request.getInputStream(), auth.getName());
+        return ResponseEntity.noContent()
+                .header("Upload-Offset", String.valueOf(s.getReceivedBytes()))
+                .header("Upload-Expires", s.getExpiresAt().toString())
+                .build();
+    }
+
+    @RequestMapping(path = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> offset(@PathVariable String id, Authentication auth) {
+        UploadSession s = svc.get(id, auth.getName());
+        return ResponseEntity.ok()
+                .header("Upload-Offset", String.valueOf(s.getReceivedBytes()))
+                .header("Upload-Length", String.valueOf(s.getTotalBytes()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    @PostMapping("/{id}/finish")
+    public Upload finish(@PathVariable String id, Authentication auth) {
+        return svc.finish(id, auth.getName());
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id, Authentication auth) {
+        svc.cancel(id, auth.getName());
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,273 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.uploads.dto.ResumableUploadCreateRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * tus-style resumable uploads: create a session, PATCH chunks at the current offset, query the
+ * offset after a dropped connection, then finish. Chunks are appended to a staging file and the
+ * acknowledged offset lives in {@link UploadSession}; finishing hands the file to the configured
+ * {@link StorageService} like any other upload. Idle sessions expire and their files are removed;
+ * finished sessions are kept for the same time, so a retried finish still returns the upload.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository sessions;
+    private final UploadRepository uploads;
+    private final UploadStaging staging;
+    private final StorageService storage;
+    private final Duration ttl;
+    // one writer per session; a second concurrent PATCH gets 409 instead of corrupting the file.
+    // Entries exist only while held (see tryLock/unlock).
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public ResumableUploadService(UploadSessionRepository sessions, UploadRepository uploads,
+                                  UploadStaging staging, StorageService storage,
+                                  @Value("${storage.resumable.ttlHours:24}") long ttlHours) {
+        this.sessions = sessions;
+        this.uploads = uploads;
+        this.staging = staging;
+        this.storage = storage;
+        this.ttl = Duration.ofHours(ttlHours);
+    }
+
+    public UploadSession create(ResumableUploadCreateRequest req, String username) {
+        staging.checkContentType(req.contentType());
+        if (req.length() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+
+        UploadSession s = new UploadSession();
+        s.setId(UUID.randomUUID().toString());
+        s.setOriginalFilename(StringUtils.cleanPath(req.filename()));
+        s.setContentType(req.contentType());
+        s.setTotalBytes(req.length());
+        s.setCreatedBy(username);
+        s.setExpiresAt(Instant.now().plus(ttl));
+        try {
+            Files.createDirectories(chunkDir());
+            Files.deleteIfExists(partFile(s.getId()));
+            Files.createFile(partFile(s.getId()));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create upload session", e);
+        }
+        return sessions.save(s);
+    }
+
+    public UploadSession get(String id, String username) {
+        UploadSession s = sessions.findById(id).orElseThrow();
+        if (!s.getCreatedBy().equals(username)) throw new NoSuchElementException();
+        if (s.getExpiresAt().isBefore(Instant.now())) throw new ResponseStatusException(HttpStatus.GONE, "Upload session expired");
+        return s;
+    }
+
+    /**
+     * Appends the request body at {@code offset}, which must equal the acknowledged offset. If the
+     * client disconnects mid-chunk, whatever arrived is kept and acknowledged so the next PATCH can
+     * continue from there.
+     */
+    public UploadSession append(String id, long offset, InputStream body, String username) {
+        UploadSession s = get(id, username);
+        if (s.getUploadId() != null) throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload already finished");
+
+        ReentrantLock lock = tryLock(id);
+        if (lock == null) throw new ResponseStatusException(HttpStatus.CONFLICT, "Another chunk is in progress");
+        try {
+            s = sessions.findById(id).orElseThrow();
+            if (offset != s.getReceivedBytes()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Offset mismatch, expected " + s.getReceivedBytes());
+            }
+
+            long written = offset;
+            IOException readFailure = null;
+            try (FileChannel ch = FileChannel.open(partFile(id), StandardOpenOption.WRITE)) {
+                ch.truncate(offset); // drop bytes from an earlier chunk that were never acknowledged
+                ch.position(offset);
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while (true) {
+                    try {
+                        n = body.read(buf);
+                    } catch (IOException e) {
+                        readFailure = e; // client went away: keep what we have
+                        break;
+                    }
+                    if (n == -1) break;
+                    if (written + n > s.getTotalBytes()) {
+                        throw new IllegalArgumentException("Chunk exceeds declared upload length");
+                    }
+                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+                    while (bb.hasRemaining()) ch.write(bb);
+                    written += n;
+                }
+                ch.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write chunk", e);
+            }
+
+            s.setReceivedBytes(written);
+            s.setUpdatedAt(Instant.now());
+            s.setExpiresAt(Instant.now().plus(ttl));
+            s = sessions.save(s);
+            if (readFailure != null) {
+                log.debug("Resumable upload {} interrupted at offset {}", id, written);
+            }
+            return s;
+        } finally {
+            unlock(id, lock);
+        }
+    }
+
+    /** Stores the assembled file through the configured StorageService; calling it twice returns the same Upload */
+    public Upload finish(String id, String username) {
+        UploadSession s = get(id, username);
+        if (s.getUploadId() != null) return uploads.findById(s.getUploadId()).orElseThrow();
+        if (!s.getReceivedBytes().equals(s.getTotalBytes())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Upload incomplete: " + s.getReceivedBytes() + " of " + s.getTotalBytes() + " bytes");
+        }
+
+        ReentrantLock lock = tryLock(id);
+        if (lock == null) throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is busy");
+        try {
+            s = sessions.findById(id).orElseThrow();
+            if (s.getUploadId() != null) return uploads.findById(s.getUploadId()).orElseThrow(); // finished meanwhile
+            StagedUpload staged;
+            try {
+                staged = staging.adopt(partFile(id), s.getContentType());
+                if (staged.path().equals(partFile(id))) staged = handoff(id, staged);
+            } catch (IOException e) {
+                throw new RuntimeException("Upload failed", e);
+            }
+            Upload u = new Upload();
+            u.setOriginalFilename(s.getOriginalFilename());
+            u.setContentType(s.getContentType());
+            Upload saved;
+            try {
+                saved = storage.storeRetryable(staged, u);
+            } catch (RuntimeException e) {
+                // the part file stays, so the client can simply call finish again
+                staging.discard(staged);
+                throw e;
+            }
+
+            s.setUploadId(saved.getId());
+            s.setUpdatedAt(Instant.now());
+            s.setExpiresAt(Instant.now().plus(ttl));
+            sessions.save(s);
+            staging.discard(staged);
+            try {
+                Files.deleteIfExists(partFile(id));
+            } catch (IOException e) {
+                log.warn("Could not delete staging file for upload session {}", id, e);
+            }
+            return saved;
+        } finally {
+            unlock(id, lock);
+        }
+    }
+
+    public void cancel(String id, String username) {
+        UploadSession s = get(id, username);
+        ReentrantLock lock = tryLock(id);
+        if (lock == null) throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is busy");
+        try {
+            discard(s);
+        } finally {
+            unlock(id, lock);
+        }
+    }
+
+    /** Removes expired sessions, finished or not; one that is being written to right now is left for the next run */
+    @Scheduled(fixedDelayString = "${storage.resumable.cleanupMs:900000}")
+    public void expireSessions() {
+        for (UploadSession s : sessions.findByExpiresAtBefore(Instant.now())) {
+            ReentrantLock lock = tryLock(s.getId());
+            if (lock == null) continue;
+            try {
+                // a chunk may have extended the session since the query
+                UploadSession current = sessions.findById(s.getId()).orElse(null);
+                if (current == null || !current.getExpiresAt().isBefore(Instant.now())) continue;
+                discard(current);
+                if (current.getUploadId() == null) {
+                    log.info("Expired resumable upload {} ({} of {} bytes)", current.getId(), current.getReceivedBytes(), current.getTotalBytes());
+                }
+            } finally {
+                unlock(s.getId(), lock);
+            }
+        }
+    }
+
+    /** The session's lock if it is free, else null */
+    private ReentrantLock tryLock(String id) {
+        while (true) {
+            ReentrantLock lock = locks.computeIfAbsent(id, k -> new ReentrantLock());
+            if (!lock.tryLock()) return null;
+            if (locks.get(id) == lock) return lock;
+            lock.unlock(); // released and dropped by its previous holder meanwhile: take the fresh one
+        }
+    }
+
+    private void unlock(String id, ReentrantLock lock) {
+        locks.remove(id, lock);
+        lock.unlock();
+    }
+
+    private void discard(UploadSession s) {
+        try {
+            Files.deleteIfExists(partFile(s.getId()));
+        } catch (IOException e) {
+            log.warn("Could not delete staging file for upload session {}", s.getId(), e);
+        }
+        sessions.delete(s);
+    }
+
+    /**
+     * What the provider gets instead of the part file itself: providers may move the staged file
+     * into place, and a failed store must not cost the client the assembled upload. A hard link
+     * when the filesystem allows it, otherwise a copy; in the staging dir, so a crash leaves it to
+     * the staging sweep.
+     */
+    private StagedUpload handoff(String id, StagedUpload staged) throws IOException {
+        Path link = staging.stagingDir().resolve(UUID.fromString(id) + ".finish");
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, staged.path());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(staged.path(), link);
+        }
+        return new StagedUpload(link, staged.contentHash(), staged.sizeBytes());
+    }
+
+    private Path chunkDir() {
+        return staging.stagingDir().resolve("resumable");
+    }
+
+    private Path partFile(String id) {
+        return chunkDir().resolve(UUID.fromString(id) + ".part");
+    }
+}
@@ -0,0 +1,372 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * S3-compatible object storage, so several app nodes can share one media store. Objects are
+ * content addressed like the local blobs ({@code <prefix>/ab/cd/<sha256>}); the row keeps the key in
+ * {@code providerId} and {@code s3://bucket/key} in {@code storagePath}.
+ * <p>
+ * Large files go up as multipart uploads whose parts are sent in parallel from the staged file
+ * (no part is buffered in memory). Reads never pass through the app: public media redirects to a
+ * short-lived presigned URL, which serves Range requests directly from the store.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.provider", havingValue = "s3")
+public class S3StorageService implements StorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(S3StorageService.class);
+    private static final int MAX_PARTS = 10_000;
+    private static final long MIN_PART_BYTES = 5L * 1024 * 1024; // S3 minimum for all but the last part
+    private static final int DELETE_BATCH = 1000; // DeleteObjects limit
+
+    private final S3Client s3;
+    private final S3Presigner presigner;
+    private final UploadRepository repo;
+    private final UploadStaging staging;
+    private final ApplicationEventPublisher events;
+    private final UploadMetadataCache metadata;
+    private final String bucket;
+    private final String prefix;
+    private final long partBytes;
+    private final long multipartThreshold;
+    private final Duration presignTtl;
+    private final ThreadPoolExecutor parts;
+
+    public S3StorageService(S3Client s3, S3Presigner presigner, UploadRepository repo, UploadStaging staging,
+                            ApplicationEventPublisher events, UploadMetadataCache metadata,
+                            @Value("${s3.bucket}") String bucket,
+                            @Value("${s3.prefix:uploads}") String prefix,
+                            @Value("${s3.partSizeMb:8}") int partSizeMb,
+                            @Value("${s3.multipartThresholdMb:16}") int multipartThresholdMb,
+                            @Value("${s3.uploadParallelism:4}") int parallelism,
+                            @Value("${s3.presignMinutes:60}") long presignMinutes) {
+        this.s3 = s3;
+        this.presigner = presigner;
+        this.repo = repo;
+        this.staging = staging;
+        this.events = events;
+        this.metadata = metadata;
+        this.bucket = bucket;
+        this.prefix = prefix.replaceAll("^/+|/+$", "");
+        this.partBytes = Math.max(MIN_PART_BYTES, partSizeMb * 1024L * 1024L);
+        this.multipartThreshold = multipartThresholdMb * 1024L * 1024L;
+        this.presignTtl = Duration.ofMinutes(presignMinutes);
+        AtomicInteger seq = new AtomicInteger();
+        this.parts = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(parallelism * 4),
+                r -> {
+                    Thread t = new Thread(r, "s3-part-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.parts.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public Upload store(MultipartFile file) {
+        if (file.getSize() > staging.maxBytes()) throw new IllegalArgumentException("File too large");
+        staging.checkContentType(file.getContentType());
+
+        StagedUpload staged;
+        try (InputStream in = file.getInputStream()) {
+            staged = staging.stage(in, file.getContentType());
+        } catch (IOException e) {
+            throw new RuntimeException("S3 upload failed", e);
+        }
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(file.getOriginalFilename()));
+        u.setContentType(file.getContentType());
+        return store(staged, u);
+    }
+
+    @Override
+    public Upload store(StagedUpload staged, Upload u) {
+        try {
+            return storeRetryable(staged, u);
+        } finally {
+            staging.discard(staged);
+        }
+    }
+
+    @Override
+    public Upload storeRetryable(StagedUpload staged, Upload u) {
+        write(staged, u);
+        try {
+            Upload saved = repo.save(u);
+            events.publishEvent(new UploadStoredEvent(saved));
+            return saved;
+        } catch (Exception e) {
+            throw new RuntimeException("S3 upload failed", e);
+        }
+    }
+
+    @Override
+    public Upload write(StagedUpload staged, Upload u) {
+        String hash = staged.contentHash();
+        if (copyExisting(hash, u)) return u;
+
+        String key = key(hash);
+        String contentType = u.getContentType() != null ? u.getContentType() : "application/octet-stream";
+        try {
+            if (staged.sizeBytes() < multipartThreshold) {
+                s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).contentType(contentType).build(),
+                        RequestBody.fromFile(staged.path()));
+            } else {
+                multipartUpload(staged, key, contentType);
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("S3 upload failed", e);
+        }
+        u.setSizeBytes(staged.sizeBytes());
+        u.setContentHash(hash);
+        u.setProviderId(key);
+        u.setStoragePath("s3://" + bucket + "/" + key);
+        u.setUploadedAt(Instant.now());
+        return u;
+    }
+
+    /** Parts are read straight from the staged file at their offsets and sent concurrently */
+    private void multipartUpload(StagedUpload staged, String key, String contentType) {
+        long size = staged.sizeBytes();
+        long partSize = Math.max(partBytes, (size + MAX_PARTS - 1) / MAX_PARTS);
+        int count = (int) ((size + partSize - 1) / partSize);
+
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket).key(key).contentType(contentType).build()).uploadId();
+        try {
+            List<Future<CompletedPart>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int partNumber = i + 1;
+                long offset = i * partSize;
+                long length = Math.min(partSize, size - offset);
+                futures.add(parts.submit(() -> {
+                    UploadPartResponse r = s3.uploadPart(UploadPartRequest.builder()
+                                    .bucket(bucket).key(key).uploadId(uploadId)
+                                    .partNumber(partNumber).contentLength(length).build(),
+                            RequestBody.fromContentProvider(() -> slice(staged.path(), offset, length), length, contentType));
+                    return CompletedPart.builder().partNumber(partNumber).eTag(r.eTag()).build();
+                }));
+            }
+            List<CompletedPart> completed = new ArrayList<>(count);
+            for (Future<CompletedPart> f : futures) completed.add(f.get());
+
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+                    .build());
+        } catch (Exception e) {
+            try {
+                s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucket).key(key).uploadId(uploadId).build());
+            } catch (RuntimeException abort) {
+                log.warn("Could not abort multipart upload {} for {}: {}", uploadId, key, abort.getMessage());
+            }
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new RuntimeException("Multipart upload failed", cause);
+        }
+    }
+
+    /** A fresh stream over {@code [offset, offset + length)}; called again by the SDK on retries */
+    private static InputStream slice(Path file, long offset, long length) {
+        try {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ).position(offset);
+            return new FilterInputStream(Channels.newInputStream(ch)) {
+                private long remaining = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) return -1;
+                    int b = super.read();
+                    if (b >= 0) remaining--;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buf, int off, int len) throws IOException {
+                    if (remaining <= 0) return -1;
+                    int n = super.read(buf, off, (int) Math.min(len, remaining));
+                    if (n > 0) remaining -= n;
+                    return n;
+                }
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<Upload> linkExisting(String contentHash, String originalFilename) {
+        Upload u = new Upload();
+        u.setOriginalFilename(StringUtils.cleanPath(originalFilename));
+        return copyExisting(ContentAddress.normalize(contentHash), u) ? Optional.of(repo.save(u)) : Optional.empty();
+    }
+
+    /** Points {@code u} at an object already stored for the same bytes; nothing is saved */
+    private boolean copyExisting(String hash, Upload u) {
+        return repo.findFirstByContentHashOrderByIdAsc(hash)
+                .filter(this::holds)
+                .map(existing -> {
+                    if (u.getContentType() == null) u.setContentType(existing.getContentType());
+                    u.setSizeBytes(existing.getSizeBytes());
+                    u.setContentHash(hash);
+                    u.setProviderId(existing.getProviderId());
+                    u.setStoragePath(existing.getStoragePath());
+                    u.copyMediaMetadata(existing);
+                    u.setUploadedAt(Instant.now());
+                    return true;
+                })
+                .orElse(false);
+    }
+
+    @Override
+    public Optional<String> downloadUrl(Upload upload) {
+        String path = upload.getStoragePath();
+        if (holds(upload)) return Optional.of(presignedUrl(upload, null));
+        if (path != null && (path.startsWith("http://") || path.startsWith("https://"))) return Optional.of(path);
+        return Optional.empty();
+    }
+
+    /**
+     * Short-lived GET URL for a stored object. The store answers Range and conditional requests on
+     * it; {@code contentDisposition} (optional) is returned as the response's Content-Disposition.
+     */
+    public String presignedUrl(Upload upload, String contentDisposition) {
+        GetObjectRequest.Builder get = GetObjectRequest.builder().bucket(bucket).key(upload.getProviderId());
+        if (upload.getContentType() != null) get.responseContentType(upload.getContentType());
+        if (contentDisposition != null) get.responseContentDisposition(contentDisposition);
+        return presigner.presignGetObject(p -> p.signatureDuration(presignTtl).getObjectRequest(get.build()))
+                .url().toString();
+    }
+
+    @Override
+    public Resource loadAsResource(Upload upload) {
+        String path = upload.getStoragePath();
+        if (!holds(upload) && path != null && !path.contains("://")) {
+            return new FileSystemResource(path); // local file not migrated yet
+        }
+        throw new UnsupportedOperationException("S3 objects must be accessed via URL");
+    }
+
+    @Override
+    public boolean holds(Upload upload) {
+        String path = upload.getStoragePath();
+        return upload.getProviderId() != null && path != null && path.startsWith("s3://");
+    }
+
+    /** Deletes the row; the object is removed after commit if no other row shares it (see {@link #deleteAll}) */
+    @Override
+    public void delete(Upload upload) {
+        deleteAll(List.of(upload));
+    }
+
+    /**
+     * One DELETE for the rows; after commit the objects no other row shares are removed with
+     * DeleteObjects, re-checked first in case the same bytes were uploaded again in the meantime.
+     * A failed call only logs: the objects are now unreferenced and the reconciler's sweep retries them.
+     */
+    @Override
+    public void deleteAll(Collection<Upload> uploads) {
+        if (uploads.isEmpty()) return;
+        repo.deleteByIdIn(uploads.stream().map(Upload::getId).toList());
+        uploads.forEach(u -> metadata.evict(u.getId()));
+
+        Set<String> keys = new LinkedHashSet<>();
+        uploads.forEach(u -> { if (holds(u)) keys.add(u.getProviderId()); });
+        if (keys.isEmpty()) return;
+        repo.findProviderIdsIn(keys).forEach(keys::remove); // still shared by other rows
+        if (keys.isEmpty()) return;
+
+        AfterCommit.run(() -> {
+            List<String> doomed = new ArrayList<>(keys);
+            try {
+                doomed.removeAll(repo.findProviderIdsIn(keys));
+                if (!doomed.isEmpty()) deleteObjects(doomed);
+            } catch (RuntimeException e) {
+                log.warn("Could not delete {} S3 objects: {}", doomed.size(), e.getMessage());
+            }
+        });
+    }
+
+    /** Pages through the objects under the prefix and deletes those whose key no row carries */
+    @Override
+    public SweepResult sweepUnreferenced(Instant cutoff, int batchSize, Runnable pause) {
+        long objects = 0, bytes = 0;
+        String token = null;
+        do {
+            ListObjectsV2Response page = s3.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(prefix + "/")
+                    .maxKeys(Math.min(batchSize, 1000))
+                    .continuationToken(token)
+                    .build());
+            token = page.isTruncated() ? page.nextContinuationToken() : null;
+
+            Map<String, Long> candidates = new LinkedHashMap<>();
+            for (S3Object o : page.contents()) {
+                if (o.lastModified().isBefore(cutoff)) candidates.put(o.key(), o.size());
+            }
+            if (!candidates.isEmpty()) {
+                repo.findProviderIdsIn(candidates.keySet()).forEach(candidates::remove);
+            }
+            if (!candidates.isEmpty()) {
+                deleteObjects(new ArrayList<>(candidates.keySet()));
+                objects += candidates.size();
+                bytes += candidates.values().stream().mapToLong(Long::longValue).sum();
+            }
+            pause.run();
+        } while (token != null);
+        return new SweepResult(objects, bytes);
+    }
+
+    private void deleteObjects(List<String> keys) {
+        for (int i = 0; i < keys.size(); i += DELETE_BATCH) {
+            List<ObjectIdentifier> ids = keys.subList(i, Math.min(i + DELETE_BATCH, keys.size())).stream()
+                    .map(k -> ObjectIdentifier.builder().key(k).build())
+                    .toList();
+            s3.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucket)
+                    .delete(Delete.builder().objects(ids).quiet(true).build())
+                    .build());
+        }
+    }
+
+    private String key(String hash) {
+        return prefix + "/" + ContentAddress.shardedKey(hash);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        parts.shutdownNow();
+    }
+}
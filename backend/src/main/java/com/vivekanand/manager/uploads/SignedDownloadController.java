@@ -0,0 +1,99 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Downloads through links issued by {@link SignedUrls}. This path has its own security filter chain
+ * without the JWT filter (see SecurityConfig): the signature is the authorization, and the upload
+ * comes from {@link UploadMetadataCache}, so a warm request touches neither the users nor the
+ * uploads table before the bytes are streamed.
+ */
+@RestController
+@RequestMapping("/api/files")
+public class SignedDownloadController {
+
+    private final SignedUrls signedUrls;
+    private final UploadMetadataCache uploads;
+    private final StorageService storage;
+    private final LocalMediaStreamer streamer;
+    private final RemoteMediaProxy remote;
+    private final RemoteBlobCache remoteCache;
+
+    public SignedDownloadController(SignedUrls signedUrls, UploadMetadataCache uploads, StorageService storage,
+                                    LocalMediaStreamer streamer, RemoteMediaProxy remote, RemoteBlobCache remoteCache) {
+        this.signedUrls = signedUrls;
+        this.uploads = uploads;
+        this.storage = storage;
+        this.streamer = streamer;
+        this.remote = remote;
+        this.remoteCache = remoteCache;
+    }
+
+    @GetMapping("/{id}")
+    public DeferredResult<ResponseEntity<?>> download(@PathVariable Long id, @RequestParam long exp, @RequestParam String d,
+                                                       @RequestParam String sig, HttpServletRequest request,
+                                                       HttpServletResponse response) throws IOException {
+        if (!signedUrls.verify(id, exp, d, sig)) {
+            return RemoteMediaProxy.answered(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        Upload u = uploads.get(id).orElseThrow().upload();
+        if (!u.isReady()) {
+            return RemoteMediaProxy.answered(ResponseEntity.status(HttpStatus.CONFLICT).build());
+        }
+
+        MediaType type = mediaType(u.getContentType());
+        String disposition = ("i".equals(d) ? "inline" : "attachment") + "; filename=\"" + sanitizeFilename(u.getOriginalFilename()) + "\"";
+        var url = storage.downloadUrl(u);
+        Path file;
+        if (url.isPresent()) {
+            Optional<Path> cached = remoteCache.cached(u);
+            if (cached.isEmpty()) {
+                return remote.proxy(url.get(), request, response, type, disposition);
+            }
+            file = cached.get();
+        } else if (u.getStoragePath() != null) {
+            file = Paths.get(u.getStoragePath()).normalize();
+        } else {
+            return RemoteMediaProxy.answered(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        }
+
+        // cacheable by this browser for as long as the link itself is valid
+        long maxAge = Math.max(0, exp - Instant.now().getEpochSecond());
+        try {
+            streamer.stream(request, response, file, type, disposition,
+                    "private, max-age=" + maxAge, MediaValidators.of(u, null));
+            return null;
+        } catch (NoSuchFileException e) {
+            response.reset();
+            if (url.isPresent()) {
+                return remote.proxy(url.get(), request, response, type, disposition); // evicted between lookup and open
+            }
+            return RemoteMediaProxy.answered(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        }
+    }
+
+    private MediaType mediaType(String ct) {
+        try {
+            return MediaType.parseMediaType(ct != null && !ct.isBlank() ? ct : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        } catch (Exception e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private String sanitizeFilename(String name) {
+        return name == null ? "file" : name.replaceAll("[\\p{Cntrl}\"]", "_");
+    }
+}
@@ -0,0 +1,80 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.uploads.dto.SignedUrl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Short-lived, HMAC-SHA256 signed download links ({@code /api/files/{id}?exp=..&d=..&sig=..}) that
+ * {@link SignedDownloadController} can check without a JWT, a user lookup or a security context.
+ * <p>
+ * The signature covers the upload id, the expiry (epoch seconds) and the disposition. Expiries are
+ * rounded up to the minute, so links issued for the same file within a minute are identical and
+ * the browser cache can reuse them. The key is derived from {@code storage.signedUrls.secret}
+ * (default: the JWT secret), so a link can never double as a token.
+ */
+@Component
+public class SignedUrls {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final long ROUND_SECONDS = 60;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    public SignedUrls(@Value("${storage.signedUrls.secret:${jwt.secret}}") String secret,
+                      @Value("${storage.signedUrls.ttlSeconds:300}") long ttlSeconds) {
+        this.key = new SecretKeySpec(hmac(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM),
+                "upload-download-links"), ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public SignedUrl sign(Long uploadId, boolean inline) {
+        long exp = (Instant.now().getEpochSecond() + ttlSeconds + ROUND_SECONDS - 1) / ROUND_SECONDS * ROUND_SECONDS;
+        String d = inline ? "i" : "a";
+        String url = "/api/files/" + uploadId + "?exp=" + exp + "&d=" + d + "&sig=" + signature(uploadId, exp, d);
+        return new SignedUrl(uploadId, url, Instant.ofEpochSecond(exp));
+    }
+
+    /** Constant-time check of an unexpired link */
+    public boolean verify(Long uploadId, long exp, String disposition, String sig) {
+        if (sig == null || exp < Instant.now().getEpochSecond()) return false;
+        if (!"a".equals(disposition) && !"i".equals(disposition)) return false;
+        return MessageDigest.isEqual(signature(uploadId, exp, disposition).getBytes(StandardCharsets.US_ASCII),
+                sig.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String signature(Long uploadId, long exp, String disposition) {
+        Mac mac = macs.get();
+        byte[] sig = mac.doFinal((uploadId + ":" + exp + ":" + disposition).getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sig);
+    }
+
+    private static byte[] hmac(SecretKeySpec key, String message) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(message.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
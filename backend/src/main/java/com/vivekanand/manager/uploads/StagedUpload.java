@@ -0,0 +1,10 @@
+package com.vivekanand.manager.uploads;
+
+import java.nio.file.Path;
+
+/**
+ * Bytes that were received, size-checked and hashed into the staging directory, waiting to be
+ * handed to a {@link StorageService}. The storage service takes ownership of {@code path}.
+ */
+public record StagedUpload(Path path, String contentHash, long sizeBytes) {
+}
@@ -0,0 +1,38 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** Progress of a {@link StorageMigrationService} run; {@code lastUploadId} is the resume checkpoint */
+@Data
+@Entity
+@Table(name = "storage_migrations")
+public class StorageMigration {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(length = 32)
+    private String targetProvider;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status = Status.RUNNING;
+    private boolean deleteSource;
+    private Long lastUploadId = 0L; // every row up to here has been attempted
+    private long migratedRows;
+    private long migratedBytes;
+    private long failedRows;
+    @Column(length = 500)
+    private String lastError;
+    private Instant startedAt = Instant.now();
+    private Instant updatedAt = Instant.now();
+    private Instant finishedAt;
+
+    public enum Status {
+        RUNNING,
+        STOPPED,
+        DONE,
+        FAILED
+    }
+}
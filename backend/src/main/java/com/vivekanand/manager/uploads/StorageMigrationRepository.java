@@ -0,0 +1,9 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface StorageMigrationRepository extends JpaRepository<StorageMigration, Long> {
+    Optional<StorageMigration> findFirstByOrderByIdDesc();
+}
@@ -0,0 +1,397 @@
+package com.vivekanand.manager.uploads;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.utils.ObjectUtils;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves stored bytes into the configured provider after {@code storage.provider} was switched:
+ * local files are pushed to Cloudinary, or Cloudinary assets are downloaded to local disk.
+ * <p>
+ * Uploads are walked by id in pages. Each content hash is copied once, on a bounded pool, and the
+ * copy is checked against the row's size (and hash, when downloading) before anything points at it.
+ * The rows of a page are then repointed with one JDBC batch, together with the checkpoint, so a
+ * stopped or crashed run continues after the last finished page. Serving needs no mode switch:
+ * every row says where its bytes are, and both providers serve rows of the other kind until they
+ * are moved. Failed rows are counted and left in place; the next run picks them up.
+ * <p>
+ * With {@code deleteSource} the old copy is removed once no row references it any more; otherwise
+ * it stays as a fallback (local leftovers are removed with it, remote ones by hand).
+ */
+@Service
+public class StorageMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageMigrationService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // compare-and-set on the old location: a row changed or deleted meanwhile is left alone
+    private static final String REPOINT = "update uploads set storage_path = ?, provider_id = ?, content_hash = ? "
+            + "where id = ? and storage_path = ?";
+
+    private final UploadRepository uploads;
+    private final StorageMigrationRepository migrations;
+    private final StorageService storage;
+    private final UploadStaging staging;
+    private final UploadMetadataCache metadata;
+    private final HotMediaCache hot;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final HttpClient http;
+    private final ObjectProvider<Cloudinary> cloudinary;
+    private final String provider;
+    private final int batchSize;
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService coordinator;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+    private volatile boolean shuttingDown;
+
+    /** One content hash (or one legacy row without hash) copied to the target provider */
+    private record Moved(List<Upload> rows, Upload target, Upload source, long bytes) {
+    }
+
+    public StorageMigrationService(UploadRepository uploads, StorageMigrationRepository migrations,
+                                   StorageService storage, UploadStaging staging, UploadMetadataCache metadata,
+                                   HotMediaCache hot, JdbcTemplate jdbc, TransactionTemplate tx,
+                                   HttpClient mediaHttpClient, ObjectProvider<Cloudinary> cloudinary,
+                                   @Value("${storage.provider:local}") String provider,
+                                   @Value("${storage.migration.batchSize:100}") int batchSize,
+                                   @Value("${storage.migration.parallelism:4}") int parallelism) {
+        this.uploads = uploads;
+        this.migrations = migrations;
+        this.storage = storage;
+        this.staging = staging;
+        this.metadata = metadata;
+        this.hot = hot;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.http = mediaHttpClient;
+        this.cloudinary = cloudinary;
+        this.provider = provider;
+        this.batchSize = batchSize;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(parallelism * 2),
+                r -> {
+                    Thread t = new Thread(r, "storage-migration-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.coordinator = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "storage-migration");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** A run that was still going when the application stopped continues from its checkpoint */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        migrations.findFirstByOrderByIdDesc()
+                .filter(m -> m.getStatus() == StorageMigration.Status.RUNNING && provider.equals(m.getTargetProvider()))
+                .filter(m -> running.compareAndSet(false, true))
+                .ifPresent(this::launch);
+    }
+
+    /**
+     * Starts moving rows into the configured provider, continuing the last unfinished run for the
+     * same target. Returns false while a run is in progress.
+     */
+    public boolean start(boolean deleteSource) {
+        if (!running.compareAndSet(false, true)) return false;
+        try {
+            StorageMigration m = migrations.findFirstByOrderByIdDesc()
+                    .filter(last -> last.getStatus() != StorageMigration.Status.DONE
+                            && provider.equals(last.getTargetProvider()))
+                    .orElseGet(() -> {
+                        StorageMigration fresh = new StorageMigration();
+                        fresh.setTargetProvider(provider);
+                        return fresh;
+                    });
+            m.setDeleteSource(deleteSource);
+            m.setStatus(StorageMigration.Status.RUNNING);
+            m.setFinishedAt(null);
+            launch(migrations.save(m));
+            return true;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /** Asks the running migration to stop after the current page; it can be resumed with {@link #start} */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Optional<StorageMigration> latest() {
+        return migrations.findFirstByOrderByIdDesc();
+    }
+
+    private void launch(StorageMigration m) {
+        stopRequested = false;
+        coordinator.execute(() -> {
+            try {
+                run(m);
+            } catch (RuntimeException e) {
+                if (shuttingDown) return; // stays RUNNING, resumed on the next start
+                log.error("Storage migration {} failed", m.getId(), e);
+                m.setStatus(StorageMigration.Status.FAILED);
+                m.setLastError(truncate(e.getMessage()));
+                m.setFinishedAt(Instant.now());
+                migrations.save(m);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void run(StorageMigration m) {
+        log.info("Storage migration {} to {} from upload id {}", m.getId(), provider, m.getLastUploadId());
+        Set<String> seen = new HashSet<>(); // hashes handled in this run (all their rows at once)
+        List<Upload> page;
+        while (!stopRequested && !(page = uploads.findByIdGreaterThanOrderByIdAsc(
+                m.getLastUploadId(), PageRequest.of(0, batchSize))).isEmpty()) {
+
+            List<List<Upload>> groups = new ArrayList<>();
+            List<Future<Moved>> copies = new ArrayList<>();
+            for (Upload u : page) {
+                if (!needsMove(u)) continue;
+                if (u.getContentHash() == null) {
+                    groups.add(List.of(u));
+                    copies.add(pool.submit(() -> move(List.of(u), null)));
+                } else if (seen.add(u.getContentHash())) {
+                    List<Upload> all = uploads.findByContentHash(u.getContentHash());
+                    List<Upload> foreign = all.stream().filter(this::needsMove).toList();
+                    Upload held = all.stream().filter(storage::holds).findFirst().orElse(null);
+                    groups.add(foreign);
+                    copies.add(pool.submit(() -> move(foreign, held)));
+                }
+            }
+
+            List<Moved> moved = new ArrayList<>();
+            long failed = 0;
+            for (int i = 0; i < copies.size(); i++) {
+                try {
+                    moved.add(copies.get(i).get());
+                } catch (ExecutionException e) {
+                    Upload first = groups.get(i).get(0);
+                    log.warn("Could not migrate upload {}: {}", first.getId(), e.getCause().getMessage());
+                    failed += groups.get(i).size();
+                    m.setLastError(truncate("Upload " + first.getId() + ": " + e.getCause().getMessage()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Storage migration interrupted");
+                }
+            }
+
+            long checkpoint = page.get(page.size() - 1).getId();
+            long failedRows = failed;
+            List<Moved> repointed = tx.execute(status -> {
+                List<Moved> done = repoint(moved);
+                m.setLastUploadId(checkpoint);
+                m.setMigratedRows(m.getMigratedRows() + done.stream().mapToLong(mv -> mv.rows().size()).sum());
+                m.setMigratedBytes(m.getMigratedBytes() + done.stream().mapToLong(Moved::bytes).sum());
+                m.setFailedRows(m.getFailedRows() + failedRows);
+                m.setUpdatedAt(Instant.now());
+                migrations.save(m);
+                return done;
+            });
+            if (m.isDeleteSource()) repointed.forEach(this::deleteSource);
+        }
+
+        if (shuttingDown) return; // stays RUNNING, resumed on the next start
+        m.setStatus(stopRequested ? StorageMigration.Status.STOPPED : StorageMigration.Status.DONE);
+        m.setFinishedAt(stopRequested ? null : Instant.now());
+        m.setUpdatedAt(Instant.now());
+        migrations.save(m);
+        log.info("Storage migration {} {}: {} rows, {} bytes moved, {} failed", m.getId(),
+                m.getStatus().name().toLowerCase(), m.getMigratedRows(), m.getMigratedBytes(), m.getFailedRows());
+    }
+
+    private boolean needsMove(Upload u) {
+        return u.isReady() && u.getStoragePath() != null && !storage.holds(u);
+    }
+
+    /**
+     * Copies the bytes of {@code rows} (all with the same hash) into the configured provider, or
+     * reuses {@code held} when another row with that hash is already stored there.
+     */
+    private Moved move(List<Upload> rows, Upload held) throws IOException, InterruptedException {
+        Upload source = rows.get(0);
+        if (held != null) return new Moved(rows, held, source, 0);
+        if (source.getStoragePath().startsWith("s3://")) {
+            throw new IOException("Moving objects out of S3 is not supported");
+        }
+
+        Upload target = new Upload();
+        target.setContentType(source.getContentType());
+        long size;
+        if (isRemote(source.getStoragePath())) {
+            StagedUpload staged = download(source);
+            size = staged.sizeBytes();
+            try {
+                storage.write(staged, target);
+            } finally {
+                staging.discard(staged);
+            }
+        } else {
+            Path file = Paths.get(source.getStoragePath());
+            size = Files.size(file);
+            checkSize(source, size);
+            String hash = source.getContentHash() != null ? source.getContentHash() : hash(file);
+            // a local source is only foreign to a remote provider, whose write() reads the file and leaves it
+            storage.write(new StagedUpload(file, hash, size), target);
+        }
+        if (target.getSizeBytes() != null && target.getSizeBytes() != size) {
+            throw new IOException("Size mismatch after copy: " + target.getSizeBytes() + " != " + size);
+        }
+        return new Moved(rows, target, source, size);
+    }
+
+    /** Streams a remote object into the staging dir, verifying size and hash against the row */
+    private StagedUpload download(Upload source) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(source.getStoragePath()))
+                .timeout(Duration.ofMinutes(1))
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Files.createDirectories(staging.stagingDir());
+        Path tmp = Files.createTempFile(staging.stagingDir(), "upload-", ".part");
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 200) throw new IOException("Source returned HTTP " + response.statusCode());
+            MessageDigest md = ContentAddress.newDigest();
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    size += n;
+                }
+            }
+            checkSize(source, size);
+            String hash = ContentAddress.hex(md.digest());
+            if (source.getContentHash() != null && !source.getContentHash().equals(hash)) {
+                throw new IOException("Content hash mismatch");
+            }
+            return new StagedUpload(tmp, hash, size);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /** Repoints the rows with one JDBC batch; returns the groups of which at least one row changed */
+    private List<Moved> repoint(List<Moved> moved) {
+        List<Object[]> args = new ArrayList<>();
+        List<Moved> owners = new ArrayList<>();
+        for (Moved mv : moved) {
+            for (Upload u : mv.rows()) {
+                String hash = u.getContentHash() != null ? u.getContentHash() : mv.target().getContentHash();
+                args.add(new Object[]{mv.target().getStoragePath(), mv.target().getProviderId(), hash,
+                        u.getId(), u.getStoragePath()});
+                owners.add(mv);
+            }
+        }
+        if (args.isEmpty()) return List.of();
+
+        int[] counts = jdbc.batchUpdate(REPOINT, args);
+        Set<Moved> done = new LinkedHashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            // drivers may report SUCCESS_NO_INFO (-2) for batched statements
+            if (counts[i] != 0) {
+                done.add(owners.get(i));
+                metadata.evict((Long) args.get(i)[3]);
+            }
+        }
+        return List.copyOf(done);
+    }
+
+    /** Removes the old copy once no row references it any more; failures only log */
+    private void deleteSource(Moved mv) {
+        Upload source = mv.source();
+        try {
+            if (isRemote(source.getStoragePath())) {
+                Cloudinary c = cloudinary.getIfAvailable();
+                String publicId = source.getProviderId();
+                if (c == null || publicId == null || uploads.existsByProviderId(publicId)) return;
+                c.uploader().destroy(publicId,
+                        ObjectUtils.asMap("resource_type", CloudinaryStorageService.resourceType(source)));
+            } else if (!uploads.existsByStoragePath(source.getStoragePath())) {
+                Path file = Paths.get(source.getStoragePath()).normalize();
+                Files.deleteIfExists(file);
+                hot.evict(file);
+            }
+        } catch (Exception e) {
+            log.warn("Could not delete migrated source of upload {}: {}", source.getId(), e.getMessage());
+        }
+    }
+
+    private static void checkSize(Upload source, long size) throws IOException {
+        if (source.getSizeBytes() != null && source.getSizeBytes() != size) {
+            throw new IOException("Size mismatch: row says " + source.getSizeBytes() + ", source has " + size);
+        }
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest md = ContentAddress.newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) != -1) md.update(buf, 0, n);
+        }
+        return ContentAddress.hex(md.digest());
+    }
+
+    private static boolean isRemote(String path) {
+        return path.startsWith("http://") || path.startsWith("https://");
+    }
+
+    private static String truncate(String s) {
+        return s == null || s.length() <= 500 ? s : s.substring(0, 500);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        shuttingDown = true;
+        stopRequested = true;
+        coordinator.shutdownNow();
+        pool.shutdownNow();
+    }
+}
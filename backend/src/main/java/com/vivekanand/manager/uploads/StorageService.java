@@ -3,12 +3,68 @@ package com.vivekanand.manager.uploads;
 import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Optional;
 
 public interface StorageService {
 
     Upload store(MultipartFile file);
+
+    /**
+     * Persists a staged file and saves {@code upload}, which the caller pre-fills with the original
+     * filename and content type. Storage fields (path, provider id, size, hash) are set here and the
+     * staged file is consumed.
+     */
+    Upload store(StagedUpload staged, Upload upload);
+
+    /**
+     * Same as {@link #store(StagedUpload, Upload)} but leaves the staged file alone, so a failed
+     * attempt can be retried with it. The caller discards it once the upload is stored.
+     */
+    Upload storeRetryable(StagedUpload staged, Upload upload);
+
+    /**
+     * Provider half of {@link #storeRetryable}: writes the bytes and fills the storage fields of
+     * {@code upload} without saving it, for callers that insert rows in bulk. No event is published.
+     */
+    Upload write(StagedUpload staged, Upload upload);
+
+    /**
+     * Creates a new Upload row that references an already stored blob with the given SHA-256,
+     * so clients can skip sending bytes the server already has. Empty when the blob is unknown.
+     */
+    Optional<Upload> linkExisting(String contentHash, String originalFilename);
     Optional<String> downloadUrl(Upload upload);
     Resource loadAsResource(Upload upload);
     void delete(Upload upload);
+
+    /**
+     * Bulk form of {@link #delete}: removes all rows with one statement and, after the surrounding
+     * transaction commits, the stored objects that no remaining row shares. Reference cascades are
+     * the caller's job, as for {@link #delete}.
+     */
+    void deleteAll(Collection<Upload> uploads);
+
+    /**
+     * True when the row's bytes live in this provider. Rows that don't (written by the other
+     * provider before {@code storage.provider} was switched) are still served, by URL or from local
+     * disk, until {@link StorageMigrationService} moves them here.
+     */
+    boolean holds(Upload upload);
+
+    /** What {@link #sweepUnreferenced} removed from the provider */
+    record SweepResult(long objects, long bytes) {
+    }
+
+    /**
+     * Deletes stored objects that no Upload row points at and that are older than {@code cutoff}.
+     * The provider is walked in pages of {@code batchSize}; {@code pause} runs between pages.
+     */
+    SweepResult sweepUnreferenced(Instant cutoff, int batchSize, Runnable pause);
+
+    /** True when the row points at bytes the provider no longer has (only checked where it is cheap) */
+    default boolean isMissing(Upload upload) {
+        return false;
+    }
 }
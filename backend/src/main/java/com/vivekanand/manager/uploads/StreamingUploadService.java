@@ -0,0 +1,64 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.tomcat.util.http.fileupload.FileItemIterator;
+import org.apache.tomcat.util.http.fileupload.FileItemStream;
+import org.apache.tomcat.util.http.fileupload.FileUpload;
+import org.apache.tomcat.util.http.fileupload.FileUploadException;
+import org.apache.tomcat.util.http.fileupload.servlet.ServletRequestContext;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses a multipart request body part by part straight from the socket (using the fileupload
+ * parser bundled with embedded Tomcat) and pipes the "file" part into {@link UploadStaging}.
+ * Nothing is buffered in memory or spooled by the servlet container first.
+ * <p>
+ * Requires {@code spring.servlet.multipart.resolve-lazily=true} so the DispatcherServlet doesn't
+ * consume the body before the controller runs; handlers using this must not read request parameters.
+ */
+@Service
+public class StreamingUploadService {
+
+    private final UploadStaging staging;
+    private final StorageService storage;
+
+    public StreamingUploadService(UploadStaging staging, StorageService storage) {
+        this.staging = staging;
+        this.storage = storage;
+    }
+
+    public Upload ingest(HttpServletRequest request) {
+        FileUpload parser = new FileUpload();
+        // limits are enforced per byte by UploadStaging; this only bounds form fields / framing
+        parser.setSizeMax(staging.maxBytes() + 64 * 1024);
+        parser.setFileCountMax(16);
+        try {
+            FileItemIterator parts = parser.getItemIterator(new ServletRequestContext(request));
+            while (parts.hasNext()) {
+                FileItemStream part = parts.next();
+                if (part.isFormField() || !"file".equals(part.getFieldName())) continue;
+
+                String contentType = part.getContentType();
+                staging.checkContentType(contentType);
+                StagedUpload staged;
+                try (InputStream in = part.openStream()) {
+                    staged = staging.stage(in, contentType);
+                }
+
+                Upload u = new Upload();
+                u.setOriginalFilename(StringUtils.cleanPath(part.getName() != null ? part.getName() : "file"));
+                u.setContentType(contentType);
+                return storage.store(staged, u);
+            }
+        } catch (FileUploadException e) {
+            throw new IllegalArgumentException("Malformed multipart request: " + e.getMessage());
+        } catch (IOException e) {
+            throw new RuntimeException("Upload failed", e);
+        }
+        throw new IllegalArgumentException("Missing 'file' part");
+    }
+}
@@ -8,7 +8,7 @@ import java.time.Instant;
 
 @Data
 @Entity
-@Table(name = "uploads")
+@Table(name = "uploads", indexes = @Index(name = "idx_uploads_content_hash", columnList = "contentHash"))
 public class Upload {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,5 +18,37 @@ public class Upload {
     private Long sizeBytes;
     private String providerId;
     private String storagePath;
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the bytes; rows with the same hash share one stored blob
     private Instant uploadedAt = Instant.now();
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private UploadStatus status = UploadStatus.READY; // null on rows created before async ingest: READY
+    @Column(length = 500)
+    private String failureReason;
+    private Instant orphanedAt; // set by UploadReconciler while nothing references the row
+    private Long perceptualHash; // 64-bit dHash of image uploads, see gallery.SimilarImageService
+    // images and mp4s, see MediaMetadataService; 0x0 when the file couldn't be read
+    private Integer width;  // px, upright (EXIF / track rotation applied)
+    private Integer height;
+    private Long durationMs;
+    @Column(length = 40)
+    private String blurhash;
+
+    public boolean isReady() {
+        return status == null || status == UploadStatus.READY;
+    }
+
+    /** Dimensions, duration and placeholder describe the bytes, so rows sharing a blob share them */
+    public void copyMediaMetadata(Upload from) {
+        this.width = from.width;
+        this.height = from.height;
+        this.durationMs = from.durationMs;
+        this.blurhash = from.blurhash;
+    }
+
+    /** Token for versioned public URLs ({@code /api/public/uploads/{id}?v=...}), cacheable as immutable */
+    public String getFingerprint() {
+        return MediaValidators.fingerprint(this);
+    }
 }
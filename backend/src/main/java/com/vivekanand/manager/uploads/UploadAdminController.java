@@ -0,0 +1,69 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/uploads")
+public class UploadAdminController {
+
+    private final UploadReconciler reconciler;
+    private final StorageMigrationService migration;
+
+    public UploadAdminController(UploadReconciler reconciler, StorageMigrationService migration) {
+        this.reconciler = reconciler;
+        this.migration = migration;
+    }
+
+    /** Starts an orphan reconciliation now; 409 while one is already running */
+    @PostMapping("/reconcile")
+    public ResponseEntity<String> reconcile() {
+        if (!reconciler.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Reconciliation already running");
+        }
+        return ResponseEntity.accepted().body("Reconciliation started in background");
+    }
+
+    @GetMapping("/reconcile")
+    public Map<String, Object> reconcileStatus() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("running", reconciler.isRunning());
+        body.put("lastReport", reconciler.lastReport().orElse(null));
+        return body;
+    }
+
+    /**
+     * Moves stored bytes into the configured {@code storage.provider}, continuing a stopped run from
+     * its checkpoint; with {@code deleteSource} the old copies are removed as rows move.
+     */
+    @PostMapping("/migration")
+    public ResponseEntity<String> migrate(@RequestParam(defaultValue = "false") boolean deleteSource) {
+        if (!migration.start(deleteSource)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Migration already running");
+        }
+        return ResponseEntity.accepted().body("Migration started in background");
+    }
+
+    /** Stops after the current batch */
+    @PostMapping("/migration/stop")
+    public ResponseEntity<Void> stopMigration() {
+        migration.stop();
+        return ResponseEntity.accepted().build();
+    }
+
+    @GetMapping("/migration")
+    public Map<String, Object> migrationStatus() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("running", migration.isRunning());
+        body.put("migration", migration.latest().orElse(null));
+        return body;
+    }
+}
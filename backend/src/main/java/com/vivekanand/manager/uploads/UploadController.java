@@ -4,10 +4,19 @@ package com.vivekanand.manager.uploads;
 import com.vivekanand.manager.finance.FinancialRecordRepository;
 import com.vivekanand.manager.gallery.AlbumRepository;
 import com.vivekanand.manager.gallery.GalleryItemRepository;
+import com.vivekanand.manager.gallery.GalleryResponseCache;
+import com.vivekanand.manager.gallery.TagIndex;
 import com.vivekanand.manager.posts.MediaAttachmentRepository;
+import com.vivekanand.manager.uploads.dto.BatchUploadResult;
+import com.vivekanand.manager.uploads.dto.BulkDeleteRequest;
+import com.vivekanand.manager.uploads.dto.BulkDeleteResult;
+import com.vivekanand.manager.uploads.dto.SignedUrl;
+import com.vivekanand.manager.uploads.dto.SignedUrlRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.transaction.Transactional;
+import jakarta.validation.Valid;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -15,11 +24,11 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/uploads")
@@ -30,14 +39,34 @@ public class UploadController {
     private final FinancialRecordRepository finRecRepo;
     private final GalleryItemRepository galItemRepo;
     private final AlbumRepository albRepo;
+    private final StreamingUploadService streamingUploads;
+    private final UploadMetadataCache metadata;
+    private final RemoteMediaProxy remote;
+    private final AsyncUploadService asyncUploads;
+    private final BatchUploadService batchUploads;
+    private final BulkDeleteService bulkDeletes;
+    private final SignedUrls signedUrls;
+    private final RemoteBlobCache remoteCache;
+    private final TagIndex tags;
+    private final GalleryResponseCache galleryResponses;
 
-    public UploadController(UploadRepository repo, StorageService storage, MediaAttachmentRepository mediaRepo, FinancialRecordRepository finRecRepo, GalleryItemRepository galItemRepo, AlbumRepository albRepo) {
+    public UploadController(UploadRepository repo, StorageService storage, MediaAttachmentRepository mediaRepo, FinancialRecordRepository finRecRepo, GalleryItemRepository galItemRepo, AlbumRepository albRepo, StreamingUploadService streamingUploads, UploadMetadataCache metadata, RemoteMediaProxy remote, AsyncUploadService asyncUploads, BatchUploadService batchUploads, BulkDeleteService bulkDeletes, SignedUrls signedUrls, RemoteBlobCache remoteCache, TagIndex tags, GalleryResponseCache galleryResponses) {
         this.repo = repo;
         this.storage = storage;
         this.mediaRepo = mediaRepo;
         this.finRecRepo = finRecRepo;
         this.galItemRepo = galItemRepo;
         this.albRepo = albRepo;
+        this.streamingUploads = streamingUploads;
+        this.metadata = metadata;
+        this.remote = remote;
+        this.asyncUploads = asyncUploads;
+        this.batchUploads = batchUploads;
+        this.bulkDeletes = bulkDeletes;
+        this.signedUrls = signedUrls;
+        this.remoteCache = remoteCache;
+        this.tags = tags;
+        this.galleryResponses = galleryResponses;
     }
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -46,30 +75,107 @@ public class UploadController {
         return storage.store(file);
     }
 
+    /**
+     * Same contract as {@link #upload} (a multipart "file" part), but the body is parsed incrementally
+     * and streamed to storage with constant memory and a single disk write. Use for large videos.
+     */
+    @PostMapping(path = "/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public Upload uploadStream(HttpServletRequest request) {
+        return streamingUploads.ingest(request);
+    }
+
+    /**
+     * Async variant of {@link #upload}: returns 202 with the PENDING upload as soon as the bytes are
+     * staged; the provider write happens in the background. Poll {@code /{id}/status}.
+     */
+    @PostMapping(path = "/async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public ResponseEntity<Upload> uploadAsync(@RequestParam("file") MultipartFile file) {
+        Upload u = asyncUploads.submit(file);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/uploads/" + u.getId() + "/status"))
+                .body(u);
+    }
+
+    /**
+     * Many "files" parts in one request, written in parallel; returns one result per part in order.
+     * With {@code albumId} (admins only) the stored files are appended to that gallery album.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER') and (#albumId == null or hasRole('ADMIN'))")
+    public List<BatchUploadResult> uploadBatch(@RequestParam("files") List<MultipartFile> files,
+                                               @RequestParam(required = false) Long albumId) {
+        return batchUploads.upload(files, albumId);
+    }
+
+    @GetMapping("/{id}/status")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public java.util.Map<String, Object> status(@PathVariable Long id) {
+        Upload u = repo.findById(id).orElseThrow();
+        var body = new java.util.LinkedHashMap<String, Object>();
+        body.put("id", u.getId());
+        body.put("status", u.isReady() ? UploadStatus.READY : u.getStatus());
+        if (u.getFailureReason() != null) body.put("reason", u.getFailureReason());
+        return body;
+    }
+
+    /** Pre-check before uploading: does the server already hold a blob with this SHA-256? */
+    @GetMapping("/hash/{sha256}")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public java.util.Map<String, Object> hasHash(@PathVariable String sha256) {
+        return java.util.Map.of("exists", repo.findFirstByContentHashOrderByIdAsc(ContentAddress.normalize(sha256)).isPresent());
+    }
+
+    /** Registers a new upload for an already stored blob without sending the bytes again (404 if unknown) */
+    @PostMapping("/hash/{sha256}")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public Upload uploadByHash(@PathVariable String sha256, @RequestParam("filename") String filename) {
+        return storage.linkExisting(sha256, filename).orElseThrow();
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
-    public ResponseEntity<?> download(@PathVariable Long id) {
+    public DeferredResult<ResponseEntity<?>> download(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) {
         Upload u = repo.findById(id).orElseThrow();
+        if (!u.isReady()) {
+            return RemoteMediaProxy.answered(ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("Upload is " + u.getStatus().name().toLowerCase()));
+        }
         var maybeUrl = storage.downloadUrl(u);
+        Resource res;
         if (maybeUrl.isPresent()) {
-            try {
-                InputStream in = new URL(maybeUrl.get()).openStream();
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(u.getContentType()))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + u.getOriginalFilename() + "\"")
-                        .header("X-Content-Type-Options", "nosniff")
-                        .body(new InputStreamResource(in));
-            } catch (Exception e) {
-                return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body("Failed to fetch remote resource");
+            var cached = remoteCache.cached(u);
+            if (cached.isEmpty()) {
+                return remote.proxy(maybeUrl.get(), request, response, MediaType.parseMediaType(u.getContentType()),
+                        "attachment; filename=\"" + u.getOriginalFilename() + "\"");
             }
+            res = new FileSystemResource(cached.get());
+        } else {
+            res = storage.loadAsResource(u);
         }
-
-        Resource res = storage.loadAsResource(u);
-        return ResponseEntity.ok()
+        return RemoteMediaProxy.answered(ResponseEntity.ok()
                 .contentType(MediaType.parseMediaType(u.getContentType()))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + u.getOriginalFilename() + "\"")
                 .header("X-Content-Type-Options", "nosniff")
-                .body(res);
+                .body(res));
+    }
+
+    /**
+     * Short-lived link to {@code /api/files/{id}} that works without the Authorization header (img
+     * src, anchors, video players). Use it instead of {@link #download} when opening many files.
+     */
+    @GetMapping("/{id}/signed-url")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public SignedUrl signedUrl(@PathVariable Long id, @RequestParam(defaultValue = "false") boolean inline) {
+        return signedUrls.sign(id, inline);
+    }
+
+    /** Signed links for many uploads in one call, e.g. a whole receipt gallery */
+    @PostMapping("/signed-urls")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public List<SignedUrl> signedUrls(@Valid @RequestBody SignedUrlRequest req) {
+        return req.ids().stream().map(id -> signedUrls.sign(id, req.inline())).toList();
     }
 
     @GetMapping
@@ -91,11 +197,24 @@ public class UploadController {
         Upload u = repo.findById(id).orElseThrow();
         mediaRepo.deleteByUploadId(id);
         finRecRepo.deleteByUploadId(id);
+        tags.deleteForUploads(List.of(id));
         galItemRepo.deleteByUploadId(id);
         albRepo.deleteByCoverUploadId(id);
+        galleryResponses.invalidateAll();
         storage.delete(u);
+        metadata.evict(id);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Deletes many uploads at once, by id and/or every upload of an album (admins only), with the
+     * same cascades as {@link #delete}. Unknown ids are reported, not treated as errors.
+     */
+    @PostMapping("/bulk-delete")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER') and (#req.albumId() == null or hasRole('ADMIN'))")
+    public BulkDeleteResult bulkDelete(@RequestBody BulkDeleteRequest req) {
+        return bulkDeletes.delete(req);
+    }
+
 
 }
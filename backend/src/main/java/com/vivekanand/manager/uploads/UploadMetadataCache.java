@@ -0,0 +1,69 @@
+package com.vivekanand.manager.uploads;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bounded in-process cache of {@link Upload} rows for the public media endpoints, so an album page
+ * firing dozens of image/poster requests doesn't turn into as many primary-key lookups.
+ * <p>
+ * Entries are weighed by their approximate size and expire after a while as a safety net; deletes
+ * evict explicitly. Hit/miss/eviction counters are published as {@code cache.*} meters with
+ * {@code cache=uploadMetadata}.
+ */
+@Component
+public class UploadMetadataCache {
+
+    private final UploadRepository repo;
+    private final Cache<Long, CachedUpload> cache;
+
+    public UploadMetadataCache(UploadRepository repo, MeterRegistry meters,
+                               @Value("${media.metadataCacheKb:8192}") long maxKb,
+                               @Value("${media.metadataTtlMinutes:10}") long ttlMinutes) {
+        this.repo = repo;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxKb * 1024)
+                .weigher((Long id, CachedUpload c) -> c.weight())
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meters, cache, "uploadMetadata");
+    }
+
+    /** Unknown ids are not cached, so a row created later is found on the next request */
+    public Optional<CachedUpload> get(Long id) {
+        CachedUpload cached = cache.getIfPresent(id);
+        if (cached != null) return Optional.of(cached);
+        return repo.findById(id).map(u -> {
+            CachedUpload c = CachedUpload.of(u);
+            cache.put(id, c);
+            return c;
+        });
+    }
+
+    /**
+     * Drops an entry now and, inside a transaction, once more after commit: a request racing the
+     * delete could otherwise re-cache the row before it is gone.
+     */
+    public void evict(Long id) {
+        if (id == null) return;
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+}
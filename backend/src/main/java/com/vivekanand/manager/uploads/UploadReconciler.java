@@ -0,0 +1,198 @@
+package com.vivekanand.manager.uploads;
+
+import com.vivekanand.manager.finance.FinancialRecordRepository;
+import com.vivekanand.manager.gallery.AlbumRepository;
+import com.vivekanand.manager.gallery.GalleryItemRepository;
+import com.vivekanand.manager.posts.MediaAttachmentRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background garbage collection for uploads, in three passes:
+ * <ol>
+ *   <li>mark: walk {@code uploads} by id in keyset pages and stamp {@code orphanedAt} on rows that no
+ *   gallery item, album cover, post attachment or financial record references (and clear it on rows
+ *   that became referenced again); local rows whose file is gone are reported;</li>
+ *   <li>purge: delete rows that have stayed orphaned for the grace period, through the
+ *   {@link StorageService} so shared blobs are only removed with their last row;</li>
+ *   <li>sweep: let the provider delete stored objects that no row points at.</li>
+ * </ol>
+ * Runs on its own low-priority thread, one at a time, sleeping between pages so serving traffic
+ * keeps the database and disk. Rows younger than the grace period are never touched: a client may
+ * still be about to attach them.
+ */
+@Service
+public class UploadReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadReconciler.class);
+    private static final int MAX_REPORTED_IDS = 100;
+
+    public record Report(Instant startedAt, Instant finishedAt, long scanned, long marked, long unmarked,
+                         long purgedRows, long missingFiles, List<Long> missingFileIds,
+                         long sweptObjects, long reclaimedBytes, String error) {
+    }
+
+    private final UploadRepository uploads;
+    private final StorageService storage;
+    private final GalleryItemRepository galleryItems;
+    private final AlbumRepository albums;
+    private final MediaAttachmentRepository attachments;
+    private final FinancialRecordRepository financialRecords;
+    private final int batchSize;
+    private final long pauseMs;
+    private final Duration grace;
+    private final ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Report lastReport;
+
+    public UploadReconciler(UploadRepository uploads, StorageService storage, GalleryItemRepository galleryItems,
+                            AlbumRepository albums, MediaAttachmentRepository attachments,
+                            FinancialRecordRepository financialRecords,
+                            @Value("${storage.reconcile.batchSize:200}") int batchSize,
+                            @Value("${storage.reconcile.pauseMs:200}") long pauseMs,
+                            @Value("${storage.reconcile.graceHours:72}") long graceHours) {
+        this.uploads = uploads;
+        this.storage = storage;
+        this.galleryItems = galleryItems;
+        this.albums = albums;
+        this.attachments = attachments;
+        this.financialRecords = financialRecords;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.grace = Duration.ofHours(graceHours);
+        this.runner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "upload-reconciler");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    @Scheduled(cron = "${storage.reconcile.cron:0 30 3 * * *}")
+    public void scheduled() {
+        start();
+    }
+
+    /** Starts a run in the background; false when one is already in progress */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) return false;
+        runner.execute(() -> {
+            try {
+                lastReport = run();
+                log.info("Upload reconciliation: {}", lastReport);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Optional<Report> lastReport() {
+        return Optional.ofNullable(lastReport);
+    }
+
+    private Report run() {
+        Instant started = Instant.now();
+        Instant cutoff = started.minus(grace);
+        long scanned = 0, marked = 0, unmarked = 0, purged = 0, missing = 0, reclaimed = 0, swept = 0;
+        List<Long> missingIds = new ArrayList<>();
+        String error = null;
+        try {
+            // 1. mark
+            long lastId = 0;
+            List<Upload> page;
+            while (!(page = uploads.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize))).isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+                scanned += page.size();
+                Set<Long> referenced = referenced(page.stream().map(Upload::getId).toList());
+                List<Upload> changed = new ArrayList<>();
+                for (Upload u : page) {
+                    if (u.getStatus() == UploadStatus.PENDING) continue;
+                    boolean orphan = !referenced.contains(u.getId())
+                            && (u.getUploadedAt() == null || u.getUploadedAt().isBefore(cutoff));
+                    if (orphan && u.getOrphanedAt() == null) {
+                        u.setOrphanedAt(started);
+                        changed.add(u);
+                        marked++;
+                    } else if (!orphan && u.getOrphanedAt() != null) {
+                        u.setOrphanedAt(null);
+                        changed.add(u);
+                        unmarked++;
+                    }
+                    if (storage.isMissing(u)) {
+                        missing++;
+                        if (missingIds.size() < MAX_REPORTED_IDS) missingIds.add(u.getId());
+                    }
+                }
+                uploads.saveAll(changed);
+                pause();
+            }
+
+            // 2. purge rows orphaned for a whole grace period
+            lastId = 0;
+            while (!(page = uploads.findByOrphanedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                    cutoff, lastId, PageRequest.of(0, batchSize))).isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+                Set<Long> referenced = referenced(page.stream().map(Upload::getId).toList());
+                for (Upload u : page) {
+                    if (referenced.contains(u.getId())) continue; // attached since it was marked
+                    boolean frees = u.getSizeBytes() != null && !storage.isMissing(u)
+                            && (u.getContentHash() == null || uploads.countByContentHash(u.getContentHash()) <= 1);
+                    storage.delete(u);
+                    purged++;
+                    if (frees) reclaimed += u.getSizeBytes();
+                }
+                pause();
+            }
+
+            // 3. objects no row points at
+            StorageService.SweepResult sweep = storage.sweepUnreferenced(cutoff, batchSize, this::pause);
+            swept = sweep.objects();
+            reclaimed += sweep.bytes();
+        } catch (RuntimeException e) {
+            log.warn("Upload reconciliation stopped early", e);
+            error = e.getMessage();
+        }
+        return new Report(started, Instant.now(), scanned, marked, unmarked, purged, missing,
+                List.copyOf(missingIds), swept, reclaimed, error);
+    }
+
+    private Set<Long> referenced(Collection<Long> ids) {
+        Set<Long> refs = new HashSet<>(galleryItems.findReferencedUploadIds(ids));
+        refs.addAll(albums.findReferencedUploadIds(ids));
+        refs.addAll(attachments.findReferencedUploadIds(ids));
+        refs.addAll(financialRecords.findReferencedUploadIds(ids));
+        return refs;
+    }
+
+    private void pause() {
+        if (pauseMs <= 0) return;
+        try {
+            Thread.sleep(pauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reconciliation interrupted");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        runner.shutdownNow();
+    }
+}
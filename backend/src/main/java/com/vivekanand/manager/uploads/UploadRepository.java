@@ -1,7 +1,72 @@
 
 package com.vivekanand.manager.uploads;
 
+import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface UploadRepository extends JpaRepository<Upload, Long> {
+    interface PerceptualHashRow {
+        Long getId();
+
+        Long getHash();
+    }
+
+    Optional<Upload> findFirstByContentHashOrderByIdAsc(String contentHash);
+
+    Optional<Upload> findFirstByContentHashAndWidthIsNotNull(String contentHash);
+
+    long countByContentHash(String contentHash);
+
+    List<Upload> findByStatus(UploadStatus status);
+
+    List<Upload> findByContentHash(String contentHash);
+
+    boolean existsByStoragePath(String storagePath);
+
+    boolean existsByProviderId(String providerId);
+
+    // reconciliation: keyset pages and "which of these are still referenced" lookups
+    List<Upload> findByIdGreaterThanOrderByIdAsc(Long id, Pageable page);
+
+    List<Upload> findByOrphanedAtBeforeAndIdGreaterThanOrderByIdAsc(Instant cutoff, Long id, Pageable page);
+
+    @Query("select distinct u.contentHash from Upload u where u.contentHash in :hashes")
+    List<String> findContentHashesIn(Collection<String> hashes);
+
+    @Query("select distinct u.providerId from Upload u where u.providerId in :providerIds")
+    List<String> findProviderIdsIn(Collection<String> providerIds);
+
+    @Modifying
+    @Transactional // joins the caller's transaction; the reconciler deletes outside one
+    @Query("delete from Upload u where u.id in :ids")
+    int deleteByIdIn(Collection<Long> ids);
+
+    // perceptual hashes: keyset pages for loading the index and for backfilling older images
+    @Query("select u.id as id, u.perceptualHash as hash from Upload u where u.perceptualHash is not null and u.id > :afterId order by u.id")
+    List<PerceptualHashRow> findPerceptualHashes(Long afterId, Pageable page);
+
+    @Query("select u from Upload u where u.perceptualHash is null and u.contentType like 'image/%' and u.id > :afterId order by u.id")
+    List<Upload> findImagesWithoutPerceptualHash(Long afterId, Pageable page);
+
+    @Modifying
+    @Transactional
+    @Query("update Upload u set u.perceptualHash = :hash where u.id = :id")
+    int setPerceptualHash(Long id, long hash);
+
+    // media metadata: backfill of images/videos stored before extraction existed
+    @Query("select u from Upload u where u.width is null and (u.contentType like 'image/%' or u.contentType = 'video/mp4') and u.id > :afterId order by u.id")
+    List<Upload> findMediaWithoutDimensions(Long afterId, Pageable page);
+
+    @Modifying
+    @Transactional
+    @Query("update Upload u set u.width = :width, u.height = :height, u.durationMs = :durationMs, u.blurhash = :blurhash where u.id = :id")
+    int setMediaMetadata(Long id, Integer width, Integer height, Long durationMs, String blurhash);
 }
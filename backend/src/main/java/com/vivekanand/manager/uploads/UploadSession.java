@@ -0,0 +1,25 @@
+package com.vivekanand.manager.uploads;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** Server-side state of a resumable upload: how many bytes of the staging file are acknowledged */
+@Data
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+    @Id
+    @Column(length = 36)
+    private String id;
+    private String originalFilename;
+    private String contentType;
+    private Long totalBytes;
+    private Long receivedBytes = 0L;
+    private String createdBy;
+    private Long uploadId; // set once finished; makes a repeated finish idempotent
+    private Instant createdAt = Instant.now();
+    private Instant updatedAt = Instant.now();
+    private Instant expiresAt;
+}
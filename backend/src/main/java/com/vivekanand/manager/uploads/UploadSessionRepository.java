@@ -0,0 +1,10 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    List<UploadSession> findByExpiresAtBefore(Instant cutoff);
+}
@@ -0,0 +1,161 @@
+package com.vivekanand.manager.uploads;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Set;
+
+/**
+ * Single entry point for incoming bytes: writes a stream to the staging directory through a fixed
+ * buffer while enforcing the size limit, sniffing the content type from the first bytes and
+ * computing the SHA-256 used for content addressing. Memory use is constant per upload.
+ * <p>
+ * The staging directory lives under the upload dir by default so the local provider can publish a
+ * staged file with a rename instead of a second copy.
+ * <p>
+ * mp4s are rewritten to faststart layout ({@link Mp4Faststart}) before they reach any provider; the
+ * content hash and size then describe the stored bytes, not the uploaded ones.
+ */
+@Component
+public class UploadStaging {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SNIFF_BYTES = 1024;
+
+    private final Path stagingDir;
+    private final long maxBytes;
+    private final Set<String> allowed = Set.of(
+            "application/pdf", "image/png", "image/jpeg", "image/jpg", "video/mp4"
+    );
+
+    public UploadStaging(
+            @Value("${storage.stagingDir:${storage.uploadDir}/.tmp}") String stagingDir,
+            @Value("${storage.maxFileSizeMb}") int maxMb) {
+        this.stagingDir = Paths.get(stagingDir);
+        this.maxBytes = maxMb * 1024L * 1024L;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public Path stagingDir() {
+        return stagingDir;
+    }
+
+    /** Rejects types we don't accept before any byte is read */
+    public void checkContentType(String contentType) {
+        if (!allowed.contains(contentType)) throw new IllegalArgumentException("Unsupported file type");
+    }
+
+    public StagedUpload stage(InputStream in, String contentType) throws IOException {
+        checkContentType(contentType);
+        Files.createDirectories(stagingDir);
+        Path tmp = Files.createTempFile(stagingDir, "upload-", ".part");
+        try {
+            MessageDigest md = ContentAddress.newDigest();
+            long total;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+
+                int head = in.readNBytes(buf, 0, SNIFF_BYTES);
+                if (!contentMatches(contentType, buf, head)) {
+                    throw new IllegalArgumentException("File content does not match its type");
+                }
+                total = write(out, md, buf, head, 0);
+
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    total = write(out, md, buf, n, total);
+                }
+            }
+            return faststartIfMp4(new StagedUpload(tmp, ContentAddress.hex(md.digest()), total), contentType, true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Stages a file that was already assembled on disk (e.g. a finished resumable upload) without
+     * copying it: the same size/type checks apply and the hash is computed with one sequential read.
+     * The only copy made is the faststart rewrite of an mp4 (the caller still owns {@code file}).
+     */
+    public StagedUpload adopt(Path file, String contentType) throws IOException {
+        checkContentType(contentType);
+        long size = Files.size(file);
+        if (size > maxBytes) throw new IllegalArgumentException("File too large");
+
+        MessageDigest md = ContentAddress.newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int head = in.readNBytes(buf, 0, SNIFF_BYTES);
+            if (!contentMatches(contentType, buf, head)) {
+                throw new IllegalArgumentException("File content does not match its type");
+            }
+            md.update(buf, 0, head);
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+        }
+        return faststartIfMp4(new StagedUpload(file, ContentAddress.hex(md.digest()), size), contentType, false);
+    }
+
+    /**
+     * Replaces a moov-at-end mp4 with its faststart copy; the source is deleted only when staging owns it.
+     * Files that are already faststart (or that the rewriter declines) are returned unchanged.
+     */
+    private StagedUpload faststartIfMp4(StagedUpload staged, String contentType, boolean ownsSource) throws IOException {
+        if (!"video/mp4".equals(contentType)) return staged;
+        Path out = Files.createTempFile(stagingDir, "upload-", ".part");
+        try {
+            MessageDigest md = ContentAddress.newDigest();
+            if (!Mp4Faststart.rewrite(staged.path(), out, md)) {
+                Files.deleteIfExists(out);
+                return staged;
+            }
+            if (ownsSource) Files.deleteIfExists(staged.path());
+            return new StagedUpload(out, ContentAddress.hex(md.digest()), Files.size(out));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(out);
+            throw e;
+        }
+    }
+
+    /** Drops a staged file that will not be stored (validation failure, duplicate, ...) */
+    public void discard(StagedUpload staged) {
+        try {
+            Files.deleteIfExists(staged.path());
+        } catch (IOException ignored) {
+            // left for the orphan sweep of the staging dir
+        }
+    }
+
+    private long write(OutputStream out, MessageDigest md, byte[] buf, int n, long total) throws IOException {
+        total += n;
+        if (total > maxBytes) throw new IllegalArgumentException("File too large");
+        md.update(buf, 0, n);
+        out.write(buf, 0, n);
+        return total;
+    }
+
+    /** Magic-number check so a renamed executable can't be stored as image/png */
+    private boolean contentMatches(String contentType, byte[] b, int n) {
+        return switch (contentType) {
+            case "image/png" -> n >= 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G';
+            case "image/jpeg", "image/jpg" -> n >= 3 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8 && (b[2] & 0xFF) == 0xFF;
+            case "video/mp4" -> n >= 8 && new String(b, 4, 4, StandardCharsets.US_ASCII).equals("ftyp");
+            case "application/pdf" -> new String(b, 0, n, StandardCharsets.ISO_8859_1).contains("%PDF-");
+            default -> false;
+        };
+    }
+}
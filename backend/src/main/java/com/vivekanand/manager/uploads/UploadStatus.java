@@ -0,0 +1,8 @@
+package com.vivekanand.manager.uploads;
+
+/** Lifecycle of an upload accepted through async ingest; synchronous uploads are READY right away */
+public enum UploadStatus {
+    PENDING,
+    READY,
+    FAILED
+}
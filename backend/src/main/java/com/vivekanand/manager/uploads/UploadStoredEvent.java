@@ -0,0 +1,8 @@
+package com.vivekanand.manager.uploads;
+
+/**
+ * Published by the storage providers after a new blob has been stored and its Upload row saved.
+ * Derivative work (variants, posters, metadata) hangs off this instead of slowing down ingest.
+ */
+public record UploadStoredEvent(Upload upload) {
+}
@@ -0,0 +1,131 @@
+package com.vivekanand.manager.uploads;
+
+import org.jcodec.api.FrameGrab;
+import org.jcodec.api.JCodecException;
+import org.jcodec.common.DemuxerTrackMeta;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.AWTUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * JPEG poster frames for locally stored mp4 uploads, decoded in-JVM with jcodec (no ffmpeg binary).
+ * <p>
+ * Posters are extracted on the {@link MediaWorkers} pool when a video is stored and cached in their
+ * own {@link DiskCache}. A request for a poster that isn't ready yet waits briefly for the same
+ * single-flight job rather than starting a second decode on the request thread.
+ */
+@Service
+public class VideoPosterService {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoPosterService.class);
+    private static final double POSTER_SECOND = 1.0; // same frame Cloudinary's so_1 uses
+
+    private final DiskCache cache;
+    private final MediaWorkers workers;
+    private final int maxWidth;
+    private final float jpegQuality;
+    private final long waitMs;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public VideoPosterService(MediaWorkers workers,
+                              @Value("${media.cacheDir:${storage.uploadDir}/.cache}") String cacheDir,
+                              @Value("${media.posterCacheMb:256}") long cacheMb,
+                              @Value("${media.posterMaxWidth:1280}") int maxWidth,
+                              @Value("${media.jpegQuality:0.8}") float jpegQuality,
+                              @Value("${media.posterWaitMs:5000}") long waitMs) {
+        this.workers = workers;
+        this.cache = new DiskCache(Paths.get(cacheDir, "posters"), cacheMb * 1024 * 1024);
+        this.maxWidth = maxWidth;
+        this.jpegQuality = jpegQuality;
+        this.waitMs = waitMs;
+    }
+
+    @EventListener
+    public void onUploadStored(UploadStoredEvent event) {
+        Upload u = event.upload();
+        if ("video/mp4".equals(u.getContentType())) {
+            ImageVariantService.localSource(u).ifPresent(p -> extract(u, p));
+        }
+    }
+
+    /** Cached poster for a local video; empty when extraction failed, timed out or the codec isn't supported */
+    public Optional<Path> poster(Upload u, Path video) {
+        Optional<Path> cached = cache.get(key(u));
+        if (cached.isPresent()) return cached;
+        try {
+            return Optional.of(extract(u, video).get(waitMs, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return Optional.empty(); // still decoding; the next request will find it cached
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private CompletableFuture<Path> extract(Upload u, Path video) {
+        String key = key(u);
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) return running;
+
+        boolean queued = workers.submit(() -> {
+            try {
+                Optional<Path> cached = cache.get(key);
+                mine.complete(cached.isPresent() ? cached.get() : cache.put(key, out ->
+                        ImageVariantService.writeImage(decodeFrame(video), "jpeg", jpegQuality, out)));
+            } catch (Exception e) {
+                log.info("No poster for upload {}: {}", u.getId(), e.getMessage());
+                mine.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        });
+        if (!queued) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(new RejectedExecutionException("Media queue full"));
+        }
+        return mine;
+    }
+
+    private BufferedImage decodeFrame(Path video) throws IOException {
+        try (SeekableByteChannel ch = NIOUtils.readableChannel(video.toFile())) {
+            FrameGrab grab = FrameGrab.createFrameGrab(ch);
+            DemuxerTrackMeta meta = grab.getVideoTrack().getMeta();
+            double duration = meta != null ? meta.getTotalDuration() : 0;
+            if (duration > POSTER_SECOND) {
+                grab.seekToSecondSloppy(POSTER_SECOND); // nearest keyframe: no decoding of skipped frames
+            }
+            Picture pic = grab.getNativeFrame();
+            if (pic == null) throw new IOException("No decodable video frame");
+            BufferedImage frame = meta != null && meta.getOrientation() != null
+                    ? AWTUtil.toBufferedImage(pic, meta.getOrientation())
+                    : AWTUtil.toBufferedImage(pic);
+            if (frame.getWidth() <= maxWidth) return frame;
+            int h = Math.max(1, (int) Math.round(frame.getHeight() * (maxWidth / (double) frame.getWidth())));
+            return ImageVariantService.scale(frame, maxWidth, h);
+        } catch (JCodecException | RuntimeException e) {
+            throw new IOException("Unsupported video stream: " + e.getMessage(), e); // e.g. HEVC, interlaced
+        }
+    }
+
+    private String key(Upload u) {
+        String hash = u.getContentHash();
+        return (hash != null ? hash.substring(0, 2) + "/" + hash : "id/" + u.getId()) + "/poster.jpg";
+    }
+}
@@ -0,0 +1,13 @@
+package com.vivekanand.manager.uploads.dto;
+
+import com.vivekanand.manager.uploads.Upload;
+
+/** Outcome for one part of a batch upload; exactly one of {@code upload} and {@code error} is set */
+public record BatchUploadResult(
+        int index,
+        String filename,
+        Upload upload,
+        Long galleryItemId,
+        String error
+) {
+}
@@ -0,0 +1,10 @@
+package com.vivekanand.manager.uploads.dto;
+
+import java.util.List;
+
+/** Uploads to delete: explicit ids, every upload in an album, or both */
+public record BulkDeleteRequest(
+        List<Long> ids,
+        Long albumId
+) {
+}
@@ -0,0 +1,9 @@
+package com.vivekanand.manager.uploads.dto;
+
+import java.util.List;
+
+public record BulkDeleteResult(
+        int deleted,
+        List<Long> notFound
+) {
+}
@@ -0,0 +1,12 @@
+package com.vivekanand.manager.uploads.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+public record ResumableUploadCreateRequest(
+        @NotBlank String filename,
+        @NotBlank String contentType,
+        @NotNull @Positive Long length
+) {
+}
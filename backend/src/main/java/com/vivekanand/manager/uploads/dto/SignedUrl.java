@@ -0,0 +1,11 @@
+package com.vivekanand.manager.uploads.dto;
+
+import java.time.Instant;
+
+/** Download link that works without authentication until {@code expiresAt} */
+public record SignedUrl(
+        Long uploadId,
+        String url,
+        Instant expiresAt
+) {
+}
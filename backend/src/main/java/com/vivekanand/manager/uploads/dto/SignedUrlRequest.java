@@ -0,0 +1,12 @@
+package com.vivekanand.manager.uploads.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record SignedUrlRequest(
+        @NotEmpty @Size(max = 500) List<Long> ids,
+        boolean inline
+) {
+}
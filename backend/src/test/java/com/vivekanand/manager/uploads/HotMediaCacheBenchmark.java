@@ -0,0 +1,203 @@
+package com.vivekanand.manager.uploads;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test of the traffic {@link HotMediaCache} is for: the same album cover requested over and
+ * over by many clients. Serves a grid-sized (32 KB, copied) and a large (200 KB, sendfile) cover
+ * through {@link LocalMediaStreamer} on a real Tomcat with the cache warmed, and with a cache that
+ * never admits anything (stat and open on every request), and reports requests per second, latency percentiles, and the CPU time and
+ * heap the connector threads spent per request. On loopback the client is usually the bottleneck,
+ * so the server-side columns are the ones to compare.
+ * <p>
+ * Opt-in: {@code mvn test -Dbenchmark=true -Dtest=HotMediaCacheBenchmark}
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HotMediaCacheBenchmark {
+
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS = 10_000;
+
+    @TempDir
+    static Path dir;
+
+    static Path small;
+    static Path large;
+    static Tomcat tomcat;
+    static String base;
+    static HttpClient client;
+
+    @RestController
+    static class Endpoints {
+        private final LocalMediaStreamer hot = new LocalMediaStreamer(
+                new HotMediaCache(new MediaWorkers(1, 10), new SimpleMeterRegistry(), 64, 512, 2));
+        private final LocalMediaStreamer cold = new LocalMediaStreamer(
+                new HotMediaCache(new MediaWorkers(1, 10), new SimpleMeterRegistry(), 64, 512, Integer.MAX_VALUE));
+
+        @GetMapping("/hot/{name}")
+        void hot(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            hot.stream(request, response, dir.resolve(name), MediaType.IMAGE_JPEG, "inline", "public, max-age=86400");
+        }
+
+        @GetMapping("/cold/{name}")
+        void cold(@PathVariable String name, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            cold.stream(request, response, dir.resolve(name), MediaType.IMAGE_JPEG, "inline", "public, max-age=86400");
+        }
+    }
+
+    @Configuration
+    @EnableWebMvc
+    static class Web {
+        @Bean
+        Endpoints endpoints() {
+            return new Endpoints();
+        }
+    }
+
+    @BeforeAll
+    static void start() throws Exception {
+        small = cover("small.jpg", 32 * 1024);
+        large = cover("large.jpg", 200 * 1024);
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(dir.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context ctx = tomcat.addContext("", null);
+        AnnotationConfigWebApplicationContext web = new AnnotationConfigWebApplicationContext();
+        web.register(Web.class);
+        Tomcat.addServlet(ctx, "dispatcher", new DispatcherServlet(web)).setLoadOnStartup(1);
+        ctx.addServletMappingDecoded("/", "dispatcher");
+        tomcat.start();
+        base = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        if (tomcat != null) tomcat.stop();
+    }
+
+    private static Path cover(String name, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return Files.write(dir.resolve(name), bytes);
+    }
+
+    @Test
+    void repeatedCoverRequests() throws Exception {
+        List<String> rows = new ArrayList<>();
+        for (Path cover : List.of(small, large)) {
+            long size = Files.size(cover);
+            String name = cover.getFileName().toString();
+            for (String path : List.of("/cold/", "/hot/")) run(path + name, size, 2_000); // warm up, admit
+            Thread.sleep(200); // the admitted load runs on MediaWorkers
+
+            rows.add(row("uncached " + size / 1024 + " KB", run("/cold/" + name, size, REQUESTS)));
+            rows.add(row("HotMediaCache " + size / 1024 + " KB", run("/hot/" + name, size, REQUESTS)));
+        }
+        System.out.printf("%n%-28s %10s %10s %10s %12s %12s%n", "HotMediaCache benchmark",
+                "req/s", "p50 us", "p99 us", "cpu us/req", "heap B/req");
+        rows.forEach(System.out::println);
+    }
+
+    private record Result(int requests, long nanos, long[] latencies, long cpuNanos, long allocated) {
+        double perSecond() {
+            return requests / (nanos / 1e9);
+        }
+
+        long percentileMicros(double p) {
+            return latencies[(int) Math.min(latencies.length - 1, Math.round(p * latencies.length))] / 1000;
+        }
+    }
+
+    private static String row(String name, Result r) {
+        return String.format("%-28s %10.0f %10d %10d %12.1f %12d", name, r.perSecond(),
+                r.percentileMicros(0.50), r.percentileMicros(0.99),
+                r.cpuNanos() / 1000.0 / r.requests(), r.allocated() / r.requests());
+    }
+
+    private static Result run(String path, long size, int requests) throws Exception {
+        long allocatedBefore = connector(Usage.HEAP);
+        long cpuBefore = connector(Usage.CPU);
+        long start = System.nanoTime();
+        long[] latencies = new long[requests];
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int first = c;
+                work.add(pool.submit(() -> {
+                    for (int i = first; i < requests; i += CLIENTS) {
+                        long t = System.nanoTime();
+                        HttpResponse<Void> rsp = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        latencies[i] = System.nanoTime() - t;
+                        assertThat(rsp.statusCode()).isEqualTo(200);
+                        assertThat(rsp.headers().firstValueAsLong("Content-Length").orElseThrow()).isEqualTo(size);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : work) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        long nanos = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(requests, nanos, latencies, connector(Usage.CPU) - cpuBefore,
+                connector(Usage.HEAP) - allocatedBefore);
+    }
+
+    private enum Usage {CPU, HEAP}
+
+    /** CPU time or heap used so far by the connector's threads, i.e. the server side of the exchange */
+    private static long connector(Usage usage) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (!t.getName().startsWith("http-nio-")) continue;
+            long used = usage == Usage.CPU ? threads.getThreadCpuTime(t.getId()) : threads.getThreadAllocatedBytes(t.getId());
+            total += Math.max(0, used);
+        }
+        return total;
+    }
+}
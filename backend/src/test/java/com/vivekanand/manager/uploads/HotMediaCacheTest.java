@@ -0,0 +1,135 @@
+package com.vivekanand.manager.uploads;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotMediaCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    /** Runs loads on the calling thread, so admission is deterministic */
+    private static class InlineWorkers extends MediaWorkers {
+        int submitted;
+
+        InlineWorkers() {
+            super(1, 1);
+        }
+
+        @Override
+        public boolean submit(Runnable task) {
+            submitted++;
+            task.run();
+            return true;
+        }
+    }
+
+    private final InlineWorkers workers = new InlineWorkers();
+
+    @Test
+    void admitsAfterTheConfiguredNumberOfMisses() throws Exception {
+        HotMediaCache cache = new HotMediaCache(workers, meters, 1, 512, 3);
+        byte[] bytes = random(10_000);
+        Path cover = write("cover.jpg", bytes);
+
+        assertThat(cache.get(cover, "image/jpeg")).isNull();
+        assertThat(cache.get(cover, "image/jpeg")).isNull();
+        assertThat(workers.submitted).isZero();
+        assertThat(cache.get(cover, "image/jpeg")).isNull(); // the third miss queues the load
+        assertThat(workers.submitted).isOne();
+
+        HotMediaCache.Entry hit = cache.get(cover, "image/jpeg");
+        assertThat(hit).isNotNull();
+        assertThat(hit.size()).isEqualTo(bytes.length);
+        assertThat(hit.lastModified()).isEqualTo(Files.getLastModifiedTime(cover).toMillis() / 1000 * 1000);
+        assertThat(toArray(hit.data())).isEqualTo(bytes);
+        assertThat(workers.submitted).isOne();
+    }
+
+    @Test
+    void onlyImagesAreConsidered() throws Exception {
+        HotMediaCache cache = new HotMediaCache(workers, meters, 1, 512, 1);
+        Path clip = write("clip.mp4", random(1000));
+
+        for (int i = 0; i < 5; i++) assertThat(cache.get(clip, "video/mp4")).isNull();
+        assertThat(cache.get(clip, null)).isNull();
+        assertThat(workers.submitted).isZero();
+    }
+
+    @Test
+    void filesAboveTheEntryLimitAreNotLoadedOrRetried() throws Exception {
+        HotMediaCache cache = new HotMediaCache(workers, meters, 1, 16, 2);
+        Path banner = write("banner.jpg", random(17 * 1024));
+
+        for (int i = 0; i < 6; i++) assertThat(cache.get(banner, "image/jpeg")).isNull();
+        assertThat(workers.submitted).isOne();
+    }
+
+    @Test
+    void staysWithinTheByteBudget() throws Exception {
+        long budget = 1024 * 1024;
+        int entry = 300 * 1024;
+        HotMediaCache cache = new HotMediaCache(workers, meters, 1, 512, 1);
+        List<Path> images = new ArrayList<>();
+        for (int i = 0; i < 8; i++) images.add(write("grid-" + i + ".jpg", random(entry)));
+
+        for (Path image : images) cache.get(image, "image/jpeg"); // each first miss loads it
+        assertThat(workers.submitted).isEqualTo(images.size());
+
+        // eviction runs on Caffeine's maintenance thread
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (size() * entry > budget && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(size() * entry).isLessThanOrEqualTo(budget);
+        assertThat(meters.get("cache.evictions").functionCounter().count()).isPositive();
+        assertThat(meters.get("cache.eviction.weight").functionCounter().count())
+                .isGreaterThanOrEqualTo((double) images.size() * entry - budget);
+    }
+
+    @Test
+    void evictForgetsTheEntryAndItsMisses() throws Exception {
+        HotMediaCache cache = new HotMediaCache(workers, meters, 1, 512, 2);
+        Path cover = write("cover.jpg", random(1000));
+        cache.get(cover, "image/jpeg");
+        cache.get(cover, "image/jpeg");
+        assertThat(cache.get(cover, "image/jpeg")).isNotNull();
+
+        cache.evict(cover);
+        assertThat(cache.get(cover, "image/jpeg")).isNull();
+        assertThat(workers.submitted).isOne(); // counting starts over
+        assertThat(cache.get(cover, "image/jpeg")).isNull();
+        assertThat(workers.submitted).isEqualTo(2);
+    }
+
+    private long size() {
+        return (long) meters.get("cache.size").gauge().value();
+    }
+
+    private Path write(String name, byte[] bytes) throws IOException {
+        return Files.write(dir.resolve(name), bytes);
+    }
+
+    private static byte[] random(int n) {
+        byte[] b = new byte[n];
+        new Random(n).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] toArray(ByteBuffer data) {
+        byte[] b = new byte[data.remaining()];
+        data.duplicate().get(b);
+        return b;
+    }
+}
@@ -0,0 +1,194 @@
+package com.vivekanand.manager.uploads;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test of {@link LocalMediaStreamer} against the {@code FileSystemResource} response it
+ * replaced, on a real Tomcat (so sendfile is in play) with a 128 MB mp4: full downloads and
+ * seek-style 1 MB range reads from a few concurrent clients. Reports throughput and the heap
+ * allocated by the connector threads per GB served.
+ * <p>
+ * Opt-in, as it moves a few GB through loopback: {@code mvn test -Dbenchmark=true -Dtest=LocalMediaStreamerBenchmark}
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class LocalMediaStreamerBenchmark {
+
+    private static final long FILE_BYTES = 128L * 1024 * 1024;
+    private static final int CLIENTS = 4;
+    private static final int FULL_DOWNLOADS = 8;
+    private static final int RANGE_READS = 800;
+    private static final int RANGE_BYTES = 1024 * 1024;
+
+    @TempDir
+    static Path dir;
+
+    static Path video;
+    static Tomcat tomcat;
+    static String base;
+    static HttpClient client;
+
+    @RestController
+    static class Endpoints {
+        private final LocalMediaStreamer streamer = new LocalMediaStreamer(
+                new HotMediaCache(new MediaWorkers(1, 10), new SimpleMeterRegistry(), 64, 512, 2));
+
+        /** How PublicImageController answered before LocalMediaStreamer */
+        @GetMapping("/resource")
+        ResponseEntity<FileSystemResource> resource() {
+            return ResponseEntity.ok().contentType(MediaType.parseMediaType("video/mp4"))
+                    .body(new FileSystemResource(video));
+        }
+
+        @GetMapping("/streamer")
+        void streamer(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            streamer.stream(request, response, video, MediaType.parseMediaType("video/mp4"),
+                    "inline", "public, max-age=86400");
+        }
+    }
+
+    @Configuration
+    @EnableWebMvc
+    static class Web {
+        @Bean
+        Endpoints endpoints() {
+            return new Endpoints();
+        }
+    }
+
+    @BeforeAll
+    static void start() throws Exception {
+        video = dir.resolve("large.mp4");
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(video, StandardOpenOption.CREATE_NEW)) {
+            for (long written = 0; written < FILE_BYTES; written += block.length) out.write(block);
+        }
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(dir.resolve("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        Context ctx = tomcat.addContext("", null);
+        AnnotationConfigWebApplicationContext web = new AnnotationConfigWebApplicationContext();
+        web.register(Web.class);
+        Tomcat.addServlet(ctx, "dispatcher", new DispatcherServlet(web)).setLoadOnStartup(1);
+        ctx.addServletMappingDecoded("/", "dispatcher");
+        tomcat.start();
+        base = "http://127.0.0.1:" + tomcat.getConnector().getLocalPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        if (tomcat != null) tomcat.stop();
+    }
+
+    @Test
+    void compareWithFileSystemResource() throws Exception {
+        for (String path : List.of("/resource", "/streamer")) run(path, 1, 20); // warm up both
+
+        Result before = run("/resource", FULL_DOWNLOADS, RANGE_READS);
+        Result after = run("/streamer", FULL_DOWNLOADS, RANGE_READS);
+        System.out.printf("%n%-34s %12s %14s%n", "LocalMediaStreamer benchmark", "MB/s", "heap KB/GB");
+        print("FileSystemResource", before);
+        print("LocalMediaStreamer", after);
+
+        assertThat(after.bytes()).isEqualTo(before.bytes());
+    }
+
+    private record Result(long bytes, long nanos, long allocated) {
+        double mbPerSecond() {
+            return bytes / 1_048_576.0 / (nanos / 1e9);
+        }
+
+        double allocatedKbPerGb() {
+            return allocated / 1024.0 / (bytes / 1_073_741_824.0);
+        }
+    }
+
+    private static void print(String name, Result r) {
+        System.out.printf("%-34s %12.0f %14.0f%n", name, r.mbPerSecond(), r.allocatedKbPerGb());
+    }
+
+    private static Result run(String path, int fullDownloads, int rangeReads) throws Exception {
+        long allocatedBefore = connectorAllocatedBytes();
+        long start = System.nanoTime();
+        AtomicLong bytes = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (int i = 0; i < fullDownloads; i++) {
+                work.add(pool.submit(() -> bytes.addAndGet(fetch(path, null, 200))));
+            }
+            Random seeks = new Random(7);
+            for (int i = 0; i < rangeReads; i++) {
+                long from = (long) (seeks.nextDouble() * (FILE_BYTES - RANGE_BYTES));
+                String range = "bytes=" + from + "-" + (from + RANGE_BYTES - 1);
+                work.add(pool.submit(() -> bytes.addAndGet(fetch(path, range, 206))));
+            }
+            for (Future<?> f : work) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        return new Result(bytes.get(), System.nanoTime() - start, connectorAllocatedBytes() - allocatedBefore);
+    }
+
+    private static long fetch(String path, String range, int expectedStatus) throws IOException, InterruptedException {
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(base + path));
+        if (range != null) rb.header("Range", range);
+        HttpResponse<Void> rsp = client.send(rb.build(), HttpResponse.BodyHandlers.discarding());
+        assertThat(rsp.statusCode()).isEqualTo(expectedStatus);
+        return rsp.headers().firstValueAsLong("Content-Length").orElseThrow();
+    }
+
+    /** Heap allocated so far by the connector's threads, i.e. the server side of the exchange */
+    private static long connectorAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("http-nio-")) total += Math.max(0, threads.getThreadAllocatedBytes(t.getId()));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,268 @@
+package com.vivekanand.manager.uploads;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalMediaStreamerTest {
+
+    private static final MediaType MP4 = MediaType.parseMediaType("video/mp4");
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:15:30Z");
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private byte[] content;
+    private LocalMediaStreamer streamer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[100_000];
+        for (int i = 0; i < content.length; i++) content[i] = (byte) (i * 31 + i / 256);
+        file = dir.resolve("clip.mp4");
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+        streamer = new LocalMediaStreamer(new HotMediaCache(new MediaWorkers(1, 10), new SimpleMeterRegistry(), 1, 512, 2));
+    }
+
+    @Test
+    void fullBodyWithValidators() throws Exception {
+        MockHttpServletResponse rsp = get(request());
+
+        assertThat(rsp.getStatus()).isEqualTo(200);
+        assertThat(rsp.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(rsp.getHeader(HttpHeaders.ETAG)).isNotBlank();
+        assertThat(rsp.getDateHeader(HttpHeaders.LAST_MODIFIED)).isEqualTo(MODIFIED.toEpochMilli());
+        assertThat(rsp.getContentLengthLong()).isEqualTo(content.length);
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void singleRange() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=1000-1999");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        assertThat(rsp.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 1000-1999/" + content.length);
+        assertThat(rsp.getContentLengthLong()).isEqualTo(1000);
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 1000, 2000));
+    }
+
+    @Test
+    void openAndSuffixRanges() throws Exception {
+        MockHttpServletRequest open = request();
+        open.addHeader(HttpHeaders.RANGE, "bytes=99000-");
+        MockHttpServletResponse rsp = get(open);
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        assertThat(rsp.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 99000-99999/100000");
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 99_000, 100_000));
+
+        MockHttpServletRequest suffix = request();
+        suffix.addHeader(HttpHeaders.RANGE, "bytes=-500");
+        rsp = get(suffix);
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        assertThat(rsp.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 99500-99999/100000");
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 99_500, 100_000));
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=200000-300000");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(416);
+        assertThat(rsp.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */" + content.length);
+        assertThat(rsp.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void malformedRangeServesTheFullBody() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "lines=1-2");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(200);
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void ifRangeWithCurrentEtagServesTheRange() throws Exception {
+        String etag = get(request()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+        req.addHeader(HttpHeaders.IF_RANGE, etag);
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 0, 100));
+    }
+
+    @Test
+    void ifRangeWithStaleEtagServesTheWholeFile() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+        req.addHeader(HttpHeaders.IF_RANGE, "\"something-else\"");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(200);
+        assertThat(rsp.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(rsp.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void ifRangeWithWeakEtagServesTheWholeFile() throws Exception {
+        String etag = get(request()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+        req.addHeader(HttpHeaders.IF_RANGE, "W/" + etag);
+
+        assertThat(get(req).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void ifRangeWithDate() throws Exception {
+        MockHttpServletRequest current = request();
+        current.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+        current.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED));
+        assertThat(get(current).getStatus()).isEqualTo(206);
+
+        MockHttpServletRequest stale = request();
+        stale.addHeader(HttpHeaders.RANGE, "bytes=0-99");
+        stale.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60)));
+        assertThat(get(stale).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void multipleRangesAsMultipartByteranges() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.RANGE, "bytes=0-9,500-599,-20");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        Matcher type = Pattern.compile("multipart/byteranges; boundary=(\\w+)").matcher(rsp.getContentType());
+        assertThat(type.matches()).isTrue();
+        byte[] body = rsp.getContentAsByteArray();
+        assertThat(rsp.getContentLengthLong()).isEqualTo(body.length);
+
+        List<Part> parts = parts(body, type.group(1));
+        assertThat(parts).hasSize(3);
+        assertPart(parts.get(0), 0, 9);
+        assertPart(parts.get(1), 500, 599);
+        assertPart(parts.get(2), 99_980, 99_999);
+    }
+
+    @Test
+    void headSendsHeadersOnly() throws Exception {
+        MockHttpServletRequest req = request();
+        req.setMethod("HEAD");
+        req.addHeader(HttpHeaders.RANGE, "bytes=0-9,20-29");
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(206);
+        assertThat(rsp.getContentLengthLong()).isPositive();
+        assertThat(rsp.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void revalidationIsNotModified() throws Exception {
+        String etag = get(request()).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        MockHttpServletResponse rsp = get(req);
+
+        assertThat(rsp.getStatus()).isEqualTo(304);
+        assertThat(rsp.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void givenValidatorsAnswerBeforeTheFileIsRead() throws Exception {
+        MockHttpServletRequest req = request();
+        req.addHeader(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+        MockHttpServletResponse rsp = new MockHttpServletResponse();
+        streamer.stream(req, rsp, dir.resolve("missing.mp4"), MP4, "inline", "no-cache",
+                new MediaValidators("\"v1\"", MODIFIED.toEpochMilli()));
+
+        assertThat(rsp.getStatus()).isEqualTo(304);
+    }
+
+    private record Part(String contentRange, byte[] data) {
+    }
+
+    private void assertPart(Part part, int start, int end) {
+        assertThat(part.contentRange()).isEqualTo("bytes " + start + "-" + end + "/" + content.length);
+        assertThat(part.data()).isEqualTo(Arrays.copyOfRange(content, start, end + 1));
+    }
+
+    /** Splits a multipart/byteranges body on its boundary; the data is binary, so this works on bytes */
+    private static List<Part> parts(byte[] body, String boundary) {
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        List<Part> parts = new ArrayList<>();
+        int at = indexOf(body, delimiter, 0);
+        assertThat(at).isZero();
+        while (true) {
+            int afterDelimiter = at + delimiter.length;
+            if (body[afterDelimiter] == '-' && body[afterDelimiter + 1] == '-') break;
+            int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII), afterDelimiter);
+            String headers = new String(body, afterDelimiter, headersEnd - afterDelimiter, StandardCharsets.US_ASCII);
+            int next = indexOf(body, delimiter, headersEnd + 4);
+            String range = headers.lines()
+                    .filter(l -> l.startsWith(HttpHeaders.CONTENT_RANGE + ": "))
+                    .map(l -> l.substring(HttpHeaders.CONTENT_RANGE.length() + 2))
+                    .findFirst().orElseThrow();
+            assertThat(headers).contains(HttpHeaders.CONTENT_TYPE + ": video/mp4");
+            parts.add(new Part(range, Arrays.copyOfRange(body, headersEnd + 4, next)));
+            at = next;
+        }
+        assertThat(new String(body, at, body.length - at, StandardCharsets.US_ASCII))
+                .isEqualTo("\r\n--" + boundary + "--\r\n");
+        return parts;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int i = from; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/api/public/uploads/1");
+    }
+
+    private MockHttpServletResponse get(MockHttpServletRequest req) throws Exception {
+        MockHttpServletResponse rsp = new MockHttpServletResponse();
+        streamer.stream(req, rsp, file, MP4, "inline", "public, max-age=60");
+        return rsp;
+    }
+
+    private static String httpDate(Instant at) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(at.atZone(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,273 @@
+package com.vivekanand.manager.uploads;
+
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Mp4FaststartTest {
+
+    private static final Set<String> CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "stbl");
+
+    @TempDir
+    static Path dir;
+
+    /** What a camera writes: moov after mdat, 64-bit chunk offsets (co64), 64-bit mdat size */
+    private static Path recorded;
+
+    @BeforeAll
+    static void record() throws IOException {
+        recorded = dir.resolve("recorded.mp4");
+        Random noise = new Random(42); // incompressible frames, so mdat dwarfs moov as in a real video
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.createSequenceEncoder(recorded.toFile(), 10);
+        for (int frame = 0; frame < 20; frame++) {
+            BufferedImage img = new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < img.getHeight(); y++) {
+                for (int x = 0; x < img.getWidth(); x++) img.setRGB(x, y, noise.nextInt());
+            }
+            encoder.encodeImage(img);
+        }
+        encoder.finish();
+    }
+
+    @Test
+    void movesMoovInFrontOfMdat() throws Exception {
+        Path out = dir.resolve("moved.mp4");
+        assertThat(Mp4Faststart.rewrite(recorded, out, sha256())).isTrue();
+
+        List<String> before = types(topLevel(Files.readAllBytes(recorded)));
+        List<String> after = types(topLevel(Files.readAllBytes(out)));
+        assertThat(before.indexOf("moov")).isGreaterThan(before.indexOf("mdat"));
+        assertThat(after.indexOf("moov")).isLessThan(after.indexOf("mdat"));
+        assertThat(Files.size(out)).isEqualTo(Files.size(recorded));
+    }
+
+    @Test
+    void co64OffsetsStillPointAtTheSameSamples() throws Exception {
+        byte[] before = Files.readAllBytes(recorded);
+        assertThat(chunkTable(before).type()).isEqualTo("co64");
+
+        Path out = dir.resolve("co64.mp4");
+        assertThat(Mp4Faststart.rewrite(recorded, out, sha256())).isTrue();
+        assertSameSamples(before, Files.readAllBytes(out));
+    }
+
+    @Test
+    void stcoOffsetsStillPointAtTheSameSamples() throws Exception {
+        Path in = dir.resolve("stco-in.mp4");
+        Files.write(in, handBuilt());
+        Path out = dir.resolve("stco.mp4");
+
+        assertThat(Mp4Faststart.rewrite(in, out, sha256())).isTrue();
+        byte[] before = Files.readAllBytes(in);
+        assertThat(chunkTable(before).type()).isEqualTo("stco");
+        assertSameSamples(before, Files.readAllBytes(out));
+    }
+
+    @Test
+    void bytesNeededForTheFirstFrameDropToAboutTheMoovSize() throws Exception {
+        Path out = dir.resolve("first-frame.mp4");
+        assertThat(Mp4Faststart.rewrite(recorded, out, sha256())).isTrue();
+        byte[] before = Files.readAllBytes(recorded);
+        byte[] after = Files.readAllBytes(out);
+        long moovSize = box(topLevel(before), "moov").size();
+
+        // a progressive player needs the whole moov plus the first chunk before it can decode a frame
+        assertThat(bytesBeforeFirstFrame(before)).isEqualTo(before.length);
+        long firstChunk = firstChunkEnd(after) - box(topLevel(after), "mdat").offset(); // mdat header + sample
+        long ftyp = 64;
+        assertThat(bytesBeforeFirstFrame(after))
+                .isLessThan(before.length / 4)
+                .isLessThanOrEqualTo(ftyp + moovSize + firstChunk);
+    }
+
+    @Test
+    void digestCoversTheWrittenBytes() throws Exception {
+        Path out = dir.resolve("digest.mp4");
+        MessageDigest md = sha256();
+        assertThat(Mp4Faststart.rewrite(recorded, out, md)).isTrue();
+
+        assertThat(HexFormat.of().formatHex(md.digest()))
+                .isEqualTo(HexFormat.of().formatHex(sha256().digest(Files.readAllBytes(out))));
+    }
+
+    @Test
+    void leavesFaststartFilesAlone() throws Exception {
+        Path once = dir.resolve("once.mp4");
+        assertThat(Mp4Faststart.rewrite(recorded, once, sha256())).isTrue();
+        Path twice = dir.resolve("twice.mp4");
+
+        assertThat(Mp4Faststart.rewrite(once, twice, sha256())).isFalse();
+        assertThat(twice).doesNotExist();
+    }
+
+    @Test
+    void leavesFragmentedFilesAlone() throws Exception {
+        Path in = dir.resolve("fragmented.mp4");
+        byte[] plain = handBuilt();
+        Files.write(in, concat(plain, box("moof", new byte[16])));
+        Path out = dir.resolve("fragmented-out.mp4");
+
+        assertThat(Mp4Faststart.rewrite(in, out, sha256())).isFalse();
+        assertThat(out).doesNotExist();
+    }
+
+    private static void assertSameSamples(byte[] before, byte[] after) {
+        long[] was = chunkTable(before).offsets();
+        long[] now = chunkTable(after).offsets();
+        assertThat(now).hasSameSizeAs(was);
+        assertThat(now).isNotEqualTo(was);
+        for (int i = 0; i < was.length; i++) {
+            int len = (int) Math.min(32, before.length - was[i]);
+            assertThat(Arrays.copyOfRange(after, (int) now[i], (int) now[i] + len))
+                    .as("chunk %d", i)
+                    .isEqualTo(Arrays.copyOfRange(before, (int) was[i], (int) was[i] + len));
+        }
+    }
+
+    private static long bytesBeforeFirstFrame(byte[] file) {
+        Box moov = box(topLevel(file), "moov");
+        return Math.max(moov.offset() + moov.size(), firstChunkEnd(file));
+    }
+
+    /** End of the first chunk, taking the first sample's size from stsz */
+    private static long firstChunkEnd(byte[] file) {
+        ByteBuffer buf = ByteBuffer.wrap(file);
+        Box stsz = find(buf, box(topLevel(file), "moov"), "stsz");
+        int body = (int) stsz.offset() + 8;
+        long fixed = buf.getInt(body + 4) & 0xFFFFFFFFL;
+        long first = fixed != 0 ? fixed : buf.getInt(body + 12) & 0xFFFFFFFFL;
+        return chunkTable(file).offsets()[0] + first;
+    }
+
+    // --- box parsing, independent of the code under test ---
+
+    private record Box(String type, long offset, long size, int headerLength) {
+    }
+
+    private record ChunkTable(String type, long[] offsets) {
+    }
+
+    private static List<Box> topLevel(byte[] file) {
+        return children(ByteBuffer.wrap(file), 0, file.length);
+    }
+
+    private static List<Box> children(ByteBuffer buf, long from, long to) {
+        List<Box> boxes = new ArrayList<>();
+        long pos = from;
+        while (pos < to) {
+            long size = buf.getInt((int) pos) & 0xFFFFFFFFL;
+            String type = new String(buf.array(), (int) pos + 4, 4, StandardCharsets.ISO_8859_1);
+            int header = 8;
+            if (size == 1) {
+                size = buf.getLong((int) pos + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = to - pos;
+            }
+            boxes.add(new Box(type, pos, size, header));
+            pos += size;
+        }
+        return boxes;
+    }
+
+    private static Box find(ByteBuffer buf, Box parent, String type) {
+        for (Box child : children(buf, parent.offset() + parent.headerLength(), parent.offset() + parent.size())) {
+            if (child.type().equals(type)) return child;
+            if (CONTAINERS.contains(child.type())) {
+                Box found = find(buf, child, type);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    private static ChunkTable chunkTable(byte[] file) {
+        ByteBuffer buf = ByteBuffer.wrap(file);
+        Box moov = box(topLevel(file), "moov");
+        Box table = find(buf, moov, "stco");
+        int width = 4;
+        if (table == null) {
+            table = find(buf, moov, "co64");
+            width = 8;
+        }
+        int body = (int) table.offset() + table.headerLength();
+        long[] offsets = new long[buf.getInt(body + 4)];
+        for (int i = 0; i < offsets.length; i++) {
+            int at = body + 8 + i * width;
+            offsets[i] = width == 4 ? buf.getInt(at) & 0xFFFFFFFFL : buf.getLong(at);
+        }
+        return new ChunkTable(table.type(), offsets);
+    }
+
+    private static Box box(List<Box> boxes, String type) {
+        return boxes.stream().filter(b -> b.type().equals(type)).findFirst().orElseThrow();
+    }
+
+    private static List<String> types(List<Box> boxes) {
+        return boxes.stream().map(Box::type).toList();
+    }
+
+    // --- a minimal moov-at-end file with 32-bit offsets: ftyp, mdat with three recognisable chunks, moov ---
+
+    private static byte[] handBuilt() {
+        byte[] ftyp = box("ftyp", "isom\0\0\2\0isomiso2".getBytes(StandardCharsets.ISO_8859_1));
+        byte[][] chunks = new byte[3][];
+        ByteArrayOutputStream media = new ByteArrayOutputStream();
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new byte[1000 + i * 100];
+            Arrays.fill(chunks[i], (byte) ('a' + i));
+            chunks[i][0] = (byte) i;
+            media.writeBytes(chunks[i]);
+        }
+        byte[] mdat = box("mdat", media.toByteArray());
+
+        ByteBuffer stco = ByteBuffer.allocate(8 + chunks.length * 4);
+        stco.putInt(0).putInt(chunks.length);
+        int at = ftyp.length + 8;
+        for (byte[] chunk : chunks) {
+            stco.putInt(at);
+            at += chunk.length;
+        }
+        ByteBuffer stsz = ByteBuffer.allocate(12 + chunks.length * 4);
+        stsz.putInt(0).putInt(0).putInt(chunks.length);
+        for (byte[] chunk : chunks) stsz.putInt(chunk.length);
+
+        byte[] stbl = box("stbl", concat(box("stsz", stsz.array()), box("stco", stco.array())));
+        byte[] moov = box("moov", box("trak", box("mdia", box("minf", stbl))));
+        return concat(ftyp, mdat, moov);
+    }
+
+    private static byte[] box(String type, byte[] body) {
+        ByteBuffer b = ByteBuffer.allocate(8 + body.length);
+        b.putInt(8 + body.length).put(type.getBytes(StandardCharsets.ISO_8859_1)).put(body);
+        return b.array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.writeBytes(p);
+        return out.toByteArray();
+    }
+
+    private static MessageDigest sha256() throws Exception {
+        return MessageDigest.getInstance("SHA-256");
+    }
+}
@@ -94,7 +94,10 @@ export default function AlbumManager(){
     const newIndex = orderedIds.indexOf(over.id);
     const newOrder = arrayMove(orderedIds, oldIndex, newIndex);
     setOrderedIds(newOrder);
-    await api.post(`/gallery/admin/albums/${albumId}/reorder`, newOrder);
+    const move = newIndex > 0
+      ? { itemId: active.id, afterItemId: newOrder[newIndex - 1] }
+      : { itemId: active.id, beforeItemId: newOrder[1] };
+    await api.post(`/gallery/admin/albums/${albumId}/moves`, [move]);
     load();
   };
 
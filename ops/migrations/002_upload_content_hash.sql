@@ -0,0 +1,3 @@
+-- Content-addressed, deduplicated upload storage: rows with the same SHA-256 share one blob
+alter table uploads add column if not exists content_hash varchar(64);
+create index if not exists idx_uploads_content_hash on uploads (content_hash);
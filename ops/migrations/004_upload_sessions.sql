@@ -0,0 +1,13 @@
+-- Resumable chunked uploads: one row per tus-style session
+create table if not exists upload_sessions (
+    id                varchar(36) not null primary key,
+    original_filename varchar(255),
+    content_type      varchar(255),
+    total_bytes       bigint,
+    received_bytes    bigint,
+    created_by        varchar(255),
+    upload_id         bigint,
+    created_at        timestamp(6) with time zone,
+    updated_at        timestamp(6) with time zone,
+    expires_at        timestamp(6) with time zone
+);
@@ -0,0 +1,3 @@
+-- Async upload ingest: lifecycle status and failure reason (NULL on older rows means READY)
+alter table uploads add column if not exists status varchar(16);
+alter table uploads add column if not exists failure_reason varchar(500);
@@ -0,0 +1,2 @@
+-- Orphaned-upload reconciler: when a row was first seen unreferenced
+alter table uploads add column if not exists orphaned_at timestamp(6) with time zone;
@@ -0,0 +1,15 @@
+-- Resumable storage migration between providers: progress and checkpoint of each run
+create table if not exists storage_migrations (
+    id              bigint generated by default as identity primary key,
+    target_provider varchar(32),
+    status          varchar(16),
+    delete_source   boolean not null,
+    last_upload_id  bigint,
+    migrated_rows   bigint not null,
+    migrated_bytes  bigint not null,
+    failed_rows     bigint not null,
+    last_error      varchar(500),
+    started_at      timestamp(6) with time zone,
+    updated_at      timestamp(6) with time zone,
+    finished_at     timestamp(6) with time zone
+);
@@ -0,0 +1,2 @@
+-- Near-duplicate detection: 64-bit dHash of image uploads (NULL until hashed; backfilled on startup)
+alter table uploads add column if not exists perceptual_hash bigint;
@@ -0,0 +1,5 @@
+-- Intrinsic media metadata for gallery layout (NULL until extracted; backfilled on startup)
+alter table uploads add column if not exists width integer;
+alter table uploads add column if not exists height integer;
+alter table uploads add column if not exists duration_ms bigint;
+alter table uploads add column if not exists blurhash varchar(40);
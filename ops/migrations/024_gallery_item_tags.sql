@@ -0,0 +1,8 @@
+-- Normalized gallery item tags (rows for existing tags are created on startup from gallery_items.tags)
+create table if not exists gallery_item_tags (
+    id      bigint generated by default as identity primary key,
+    item_id bigint not null,
+    tag     varchar(64) not null,
+    constraint uk_gallery_item_tags_item_tag unique (item_id, tag)
+);
+create index if not exists idx_gallery_item_tags_tag on gallery_item_tags (tag);